@@ -1,8 +1,14 @@
 package mlcs;
 
+import mlcs.util.Queues;
+import mlcs.util.Stopwatch;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 
 public abstract class AbstractCrawler {
@@ -10,26 +16,172 @@ public abstract class AbstractCrawler {
   public final Node start; // start node
   public final Node end = null;
   short currentLevel = 0;
+  long startAt;
   Limit limit;
   LocationStore locStore;
+  // search,deduplicate and clean each level partitioned by character.
+  boolean charPartitioned = false;
+  // rearrange each level along the Z-order curve after searching,not used with charPartitioned.
+  boolean zOrdered = false;
+  // mark predecessors of end while searching and leave immediate successors to the razor,not used with charPartitioned.
+  boolean fused = true;
+  // counters and phase times of all levels
+  final LevelStats stats = new LevelStats();
+  // shared pool,e.g. with a background estimator,a private pool is used if null.
+  ForkJoinPool pool;
+  // dominance filter of each level
+  DominanceSelector selector;
 
   public AbstractCrawler(Mlcs mlcs, LocationStore locStore, Limit limit) {
     this.mlcs = mlcs;
+    this.selector = new DominanceSelector(mlcs);
     start = new Node(mlcs.start);
     this.locStore = locStore;
     this.limit = limit;
   }
 
+  /**
+   * Search the MLCS graph level by level.
+   */
+  public abstract Graph search();
+
+  /**
+   * Mining progress,the final level is between the length lower bound(limit) and the upbound(mlcs),
+   * so the percent and ETA are ranges.
+   */
+  String progress() {
+    long perLevel = (System.currentTimeMillis() - startAt) / Math.max(1, currentLevel);
+    int lower = Math.max(currentLevel, limit.mlcsLength());
+    int upper = Math.max(lower, mlcs.upperBound);
+    return String.format("mining level %d %.2f%%~%.2f%% eta %s~%s", currentLevel, currentLevel * 100.0 / upper,
+      currentLevel * 100.0 / lower, Stopwatch.format(perLevel * (lower - currentLevel)),
+      Stopwatch.format(perLevel * (upper - currentLevel)));
+  }
+
+  /**
+   * Search all reachable successors of fronts using multiple threads.
+   * The successors are deduplicated by the tasks directly in the given level set.
+   * Successors dropped by siblings are counted to stats.pruned.
+   * In fused mode the new successors without successors are discarded at once,and counted to stats.ends.
+   *
+   * @param pool   thread pool
+   * @param fronts locations of current level
+   * @param nodes  empty level set of the next level
+   * @return the successor list,the i-th location is at slot i of nodes.
+   */
+  ArrayList<Location> expand(ForkJoinPool pool, ArrayList<Location> fronts, LocationSet nodes) {
+    ArrayList<Location> nexts = expand(pool, mlcs, limit, currentLevel, fronts, nodes, stats, fused);
+    return zOrdered ? reorder(pool, nexts, nodes) : nexts;
+  }
+
+  /**
+   * Rearrange the level and its slots along the Z-order curve,
+   * so the cleaner,the razor and the next expansion visit near locations together.
+   */
+  ArrayList<Location> reorder(ForkJoinPool pool, ArrayList<Location> locations, LocationSet nodes) {
+    if (locations.size() < 2) return locations;
+    int[] order = ZOrder.sort(pool, mlcs, locations);
+    ArrayList<Location> sorted = new ArrayList<>(locations.size());
+    for (int i : order) sorted.add(locations.get(i));
+    nodes.reorder(order);
+    return sorted;
+  }
+
+  /**
+   * Search successors of fronts at the given level,which can reach the end on a limit.mlcsLength() path.
+   * The limit is read again for every batch,so a bound raised meanwhile is used at once.
+   *
+   * @param limit a mlcs length of 0 means search all successors
+   * @see #expand(ForkJoinPool, ArrayList, LocationSet)
+   */
+  static ArrayList<Location> expand(ForkJoinPool pool, Mlcs mlcs, Limit limit, short level,
+                                    List<Location> fronts, LocationSet nodes) {
+    return expand(pool, mlcs, limit, level, fronts, nodes, null, false);
+  }
+
+  /**
+   * Search successors of fronts,and mark the predecessors of end in the same pass if marking.
+   *
+   * @param stats counters of current level,null if not needed
+   *
+   * @see #expand(ForkJoinPool, Mlcs, Limit, short, List, LocationSet)
+   */
+  static ArrayList<Location> expand(ForkJoinPool pool, Mlcs mlcs, Limit limit, short level,
+                                    List<Location> fronts, LocationSet nodes, LevelStats stats,
+                                    boolean marking) {
+    int frontCount = 0;
+    for (Location l : fronts) {
+      if (!l.isDiscard()) frontCount++;
+    }
+    int maxSize = frontCount * mlcs.charset.size();
+    nodes.reserve(maxSize);
+    Location[] nexts = new Location[maxSize];
+    List<int[]> segs = Queues.split(fronts.size(), pool.getParallelism());
+    LinkedList<SearchCrawler> tasks = new LinkedList<>();
+    for (int[] seg : segs) {
+      tasks.add(new SearchCrawler(mlcs, limit, level, fronts, nodes, nexts, seg[0], seg[1]));
+      tasks.getLast().marking = marking;
+      pool.submit(tasks.getLast());
+    }
+    int ends = 0;
+    long pruned = 0;
+    for (SearchCrawler task : tasks) {
+      task.join();
+      ends += task.ends;
+      pruned += task.pruned;
+    }
+    if (null != stats) {
+      stats.pruned = (int) pruned;
+      if (marking) stats.ends = ends;
+    }
+    return new ArrayList<>(Arrays.asList(nexts).subList(0, nodes.size()));
+  }
+
+  /**
+   * Find and mark immediate successors using multiple threads.
+   *
+   * @return the count of predecessors of end
+   */
+  int clean(ForkJoinPool pool, ArrayList<Location> fronts, LocationSet nodes) {
+    List<int[]> segs = Queues.split(fronts.size(), pool.getParallelism());
+    LinkedList<ForkJoinTask<Integer>> cleanTasks = new LinkedList<>();
+    for (int[] seg : segs) {
+      cleanTasks.add(pool.submit(new ImmediateCleaner(this.mlcs, fronts, nodes, seg[0], seg[1])));
+    }
+    int endPredecessorsCnt = 0;
+    for (ForkJoinTask<Integer> task : cleanTasks) {
+      endPredecessorsCnt += task.join();
+    }
+    return endPredecessorsCnt;
+  }
+
+  /**
+   * Remove discarded locations and register the level to the store.
+   *
+   * @param fronts     locations of the level
+   * @param nodes      level set of the level,fronts[i] is at slot i
+   * @param partitions not null if the level is partitioned by character
+   */
+  void store(ForkJoinPool pool, ArrayList<Location> fronts, LocationSet nodes, CharPartitions partitions) {
+    if (null == partitions) {
+      nodes.removeIf(slot -> fronts.get(slot).isDiscard());
+    } else {
+      nodes = partitions.collect(pool);
+    }
+    locStore.add(this.currentLevel, nodes);
+  }
+
   /**
    * Find and mark immediate successors in the same layer.
+   * The locations[i] should be the location at slot i of locs.
    */
   static class ImmediateCleaner extends RecursiveTask<Integer> {
     ArrayList<Location> locations;
-    HashMap<Location, Location> locs;
+    LocationSet locs;
     Mlcs mlcs;
     int from, to;
 
-    public ImmediateCleaner(Mlcs mlcs, ArrayList<Location> locations, HashMap<Location, Location> locs, int from, int to) {
+    public ImmediateCleaner(Mlcs mlcs, ArrayList<Location> locations, LocationSet locs, int from, int to) {
       this.locations = locations;
       this.locs = locs;
       this.mlcs = mlcs;
@@ -39,15 +191,17 @@ public abstract class AbstractCrawler {
 
     public Integer compute() {
       int endPredecessorsCnt = 0;
-      Mlcs mlcs = this.mlcs;
+      LocationCursor nexts = mlcs.successors();
       for (int i = from; i < to; i++) {
         Location loc = locations.get(i);
-        List<Location> nexts = mlcs.nextLocations(loc);
-        for (Location next : nexts) {
-          Location n = locs.get(next);
-          if (null != n) n.setReserved(false);
+        boolean hasNext = false;
+        nexts.reset(loc.index);
+        while (nexts.next()) {
+          hasNext = true;
+          int slot = locs.indexOf(nexts.index);
+          if (slot >= 0) locations.get(slot).setReserved(false);
         }
-        if (nexts.isEmpty()) {
+        if (!hasNext) {
           loc.setReserved(false);
           endPredecessorsCnt++;
         }
@@ -58,33 +212,58 @@ public abstract class AbstractCrawler {
 
 
   /**
-   * A single search task,find all successors in range locations[from,to]
+   * A single search task,find all successors in range locations[from,to),
+   * and put them into the shared level set.
+   * When marking,a new location without successors is discarded as a predecessor of end.
+   * Returns the count of new locations added by this task.
    */
-  static class SearchCrawler extends RecursiveTask<List<Links>> {
-    AbstractCrawler crawler;
-    ArrayList<Location> locations;
+  static class SearchCrawler extends RecursiveTask<Integer> {
+    Mlcs mlcs;
+    Limit limit;
+    short level;
+    List<Location> locations;
+    LocationSet nodes;
+    Location[] nexts; // slot->location
     int from, to;
+    boolean marking;
+    int ends; // count of predecessors of end marked by this task
+    long pruned; // count of successors dropped by siblings
 
-    public SearchCrawler(AbstractCrawler crawler, ArrayList<Location> locations, int from, int to) {
+    public SearchCrawler(Mlcs mlcs, Limit limit, short level, List<Location> locations, LocationSet nodes,
+                         Location[] nexts, int from, int to) {
       super();
-      this.crawler = crawler;
+      this.mlcs = mlcs;
+      this.limit = limit;
+      this.level = level;
       this.locations = locations;
+      this.nodes = nodes;
+      this.nexts = nexts;
       this.from = from;
       this.to = to;
     }
 
-    public List<Links> compute() {
-      List<Links> results = new ArrayList<>();
-      short level = crawler.currentLevel;
-      Limit limit = crawler.limit;
-      for (int i = from; i < to; i++) {
-        Location n = locations.get(i);
-        if (!n.isDiscard()) {
-          List<Location> ns = crawler.mlcs.nextReachableLocations(n, limit.mlcsLength, level);
-          if (!ns.isEmpty()) results.add(new Links(n, ns));
+    public Integer compute() {
+      int added = 0;
+      BatchExpander expander = new BatchExpander(mlcs);
+      short[] next = new short[mlcs.seqs.size()];
+      int i = from;
+      while (i < to) {
+        i = expander.load(locations, i, to);
+        for (int k = 0, n = expander.expand(limit.mlcsLength(), level); k < n; k++) {
+          int slot = nodes.putIfAbsentConcurrently(expander.copy(k, next));
+          if (slot < 0) {
+            Location loc = expander.toLocation(k);
+            if (marking && !mlcs.hasSuccessor(loc.index)) {
+              loc.setReserved(false);
+              ends += 1;
+            }
+            nexts[-slot - 1] = loc;
+            added += 1;
+          }
         }
       }
-      return results;
+      pruned = expander.pruned;
+      return added;
     }
   }
 
@@ -0,0 +1,281 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.List;
+
+/**
+ * Expand a batch of locations at once.
+ * <p>
+ * The batch and its successors are columnar(one short[] per sequence),successors are gathered in one pass
+ * and the tail upbounds are calculated in another,so the reachable check is a plain loop over int[] bounds.
+ * The bounds stay in the batch for callers which rank the successors.
+ * Successors dominated by a sibling(another successor of the same location) are dropped at last,
+ * the razor of the level would discard them anyway.
+ * <pre>
+ *   BatchExpander expander = new BatchExpander(mlcs);
+ *   int i = from;
+ *   while (i < to) {
+ *     i = expander.load(locations, i, to);
+ *     for (int k = 0, n = expander.expand(mlcsLength, level); k < n; k++) {
+ *       // use expander.copy(k, buf)
+ *     }
+ *   }
+ * </pre>
+ * A expander is not thread safe, every thread should create its own.
+ */
+public class BatchExpander {
+
+  /**
+   * Max count of locations in a batch
+   */
+  public static final int BatchSize = 256;
+
+  final Mlcs mlcs;
+  final int dimension;
+  final int charCount;
+
+  final short[][] fronts; // seq->location
+  int frontCount;
+
+  /**
+   * Successors of the batch,columnar seq->successor
+   */
+  public final short[][] nexts;
+  /**
+   * which location in the batch the successor comes from
+   */
+  public final int[] origins;
+  /**
+   * character index of the successor
+   */
+  public final int[] chars;
+  /**
+   * tail upbound of the successor,only filled when expanding with a mlcsLength
+   */
+  public final int[] bounds;
+  boolean bounded;
+  int count;
+  /**
+   * count of successors dropped by siblings,accumulated over batches
+   */
+  public long pruned;
+
+  final int[] rows; // offset of a location in table of each seq
+  final short[] buf;
+  final boolean[] dominateds; // sibling->dominated
+
+  public BatchExpander(Mlcs mlcs) {
+    this.mlcs = mlcs;
+    this.dimension = mlcs.seqs.size();
+    this.charCount = mlcs.charCount;
+    int capacity = BatchSize * charCount;
+    this.fronts = new short[dimension][BatchSize];
+    this.nexts = new short[dimension][capacity];
+    this.origins = new int[capacity];
+    this.chars = new int[capacity];
+    this.bounds = new int[capacity];
+    this.rows = new int[dimension];
+    this.buf = new short[dimension];
+    this.dominateds = new boolean[charCount];
+  }
+
+  /**
+   * Load undiscarded locations from [from,to) until the batch is full.
+   *
+   * @return the position to load next batch from
+   */
+  public int load(List<Location> locations, int from, int to) {
+    int n = 0;
+    int i = from;
+    while (i < to && n < BatchSize) {
+      Location loc = locations.get(i++);
+      if (!loc.isDiscard()) {
+        short[] index = loc.index;
+        for (int j = 0; j < dimension; j++) {
+          fronts[j][n] = index[j];
+        }
+        n++;
+      }
+    }
+    frontCount = n;
+    return i;
+  }
+
+  /**
+   * Expand the loaded batch
+   *
+   * @param mlcsLength when greater than 0,only keep the successors which can reach the end on a mlcsLength path
+   * @param level      level of the successors
+   * @return count of successors
+   */
+  public int expand(int mlcsLength, short level) {
+    count = 0;
+    gather();
+    bounded = mlcsLength > 0;
+    if (bounded && count > 0) {
+      tailUpbounds();
+      filter(mlcsLength - level);
+    }
+    if (count > 1) pruneSiblings();
+    return count;
+  }
+
+  /**
+   * Gather successors of all locations in the batch.
+   * The rows of a location are reused by all characters,and the successors are written column by column.
+   */
+  private void gather() {
+    short[][] table = mlcs.successorTable;
+    int maxLength = mlcs.maxLength;
+    int charCount = this.charCount;
+    int dimension = this.dimension;
+    int[] rows = this.rows;
+    int n = count;
+    for (int k = 0; k < frontCount; k++) {
+      for (int j = 0; j < dimension; j++) rows[j] = fronts[j][k] * charCount;
+      for (int c = 0; c < charCount; c++) {
+        int j = 0;
+        while (j < dimension) {
+          short successor = table[j][rows[j] + c];
+          if (successor < 0 || successor > maxLength) break;
+          nexts[j][n] = successor;
+          j++;
+        }
+        if (j == dimension) {
+          origins[n] = k;
+          chars[n] = c;
+          n++;
+        }
+      }
+    }
+    count = n;
+  }
+
+  /**
+   * Calculate tail upbound of all successors
+   */
+  private void tailUpbounds() {
+    short[][] distanceTable = mlcs.distanceTable;
+    int charCount = this.charCount;
+    int dimension = this.dimension;
+    int[] rows = this.rows;
+    TailBound[] tailBounds = mlcs.tailBounds;
+    short[] buf = this.buf;
+    for (int k = 0; k < count; k++) {
+      for (int j = 0; j < dimension; j++) rows[j] = nexts[j][k] * charCount;
+      int bound = 0;
+      for (int c = 0; c < charCount; c++) {
+        short minOfChar = Short.MAX_VALUE;
+        for (int j = 0; j < dimension; j++) {
+          short d = distanceTable[j][rows[j] + c];
+          if (d < minOfChar) minOfChar = d;
+        }
+        bound += minOfChar;
+      }
+      if (tailBounds.length > 0) {
+        copy(k, buf);
+        for (TailBound tailBound : tailBounds) {
+          int b = tailBound.upbound(buf);
+          if (b < bound) bound = b;
+        }
+      }
+      bounds[k] = bound;
+    }
+  }
+
+  /**
+   * Remove the successors whose tail upbound is less than the least tail
+   */
+  private void filter(int leastTail) {
+    int n = 0;
+    for (int k = 0; k < count; k++) {
+      if (bounds[k] >= leastTail) {
+        if (n != k) {
+          for (int j = 0; j < dimension; j++) nexts[j][n] = nexts[j][k];
+          origins[n] = origins[k];
+          chars[n] = chars[k];
+          bounds[n] = bounds[k];
+        }
+        n++;
+      }
+    }
+    count = n;
+  }
+
+  /**
+   * Remove the successors dominated by a sibling.
+   * Successors are monotone,siblings come from different characters and differ in every coordinate,
+   * so a sibling dominates when its first coordinate is smaller and so are the others.
+   * Siblings are adjacent in the batch(gathered location by location).
+   */
+  private void pruneSiblings() {
+    int dimension = this.dimension;
+    short[][] nexts = this.nexts;
+    short[] firsts = nexts[0];
+    boolean[] dominateds = this.dominateds;
+    int n = 0;
+    int start = 0;
+    while (start < count) {
+      int end = start + 1;
+      while (end < count && origins[end] == origins[start]) end++;
+      for (int k = start; k < end; k++) {
+        boolean dominated = false;
+        for (int s = start; s < end && !dominated; s++) {
+          if (firsts[s] >= firsts[k]) continue;
+          int j = 1;
+          while (j < dimension && nexts[j][s] < nexts[j][k]) j++;
+          dominated = (j == dimension);
+        }
+        dominateds[k - start] = dominated;
+      }
+      for (int k = start; k < end; k++) {
+        if (!dominateds[k - start]) {
+          if (n != k) {
+            for (int j = 0; j < dimension; j++) nexts[j][n] = nexts[j][k];
+            origins[n] = origins[k];
+            chars[n] = chars[k];
+            bounds[n] = bounds[k];
+          }
+          n++;
+        }
+      }
+      start = end;
+    }
+    pruned += count - n;
+    count = n;
+  }
+
+  /**
+   * Copy the k-th successor into buf
+   */
+  public short[] copy(int k, short[] buf) {
+    for (int j = 0; j < dimension; j++) buf[j] = nexts[j][k];
+    return buf;
+  }
+
+  /**
+   * Materialize the k-th successor
+   */
+  public Location toLocation(int k) {
+    Location loc = new Location(copy(k, new short[dimension]));
+    if (bounded) loc.setTailUpbound(bounds[k]);
+    return loc;
+  }
+}
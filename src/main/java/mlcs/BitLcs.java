@@ -0,0 +1,97 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bit parallel LCS length of two sequences(Hyyro,Allison-Dix),64 columns per long.
+ * <p>
+ * The MLCS is a common subsequence of every pair,so the minimum LCS of all pairs is a upbound of MLCS length.
+ */
+public class BitLcs {
+
+  /**
+   * Minimum LCS length of all sequence pairs,one task per pair.
+   */
+  public static int upbound(Mlcs mlcs, ForkJoinPool pool) {
+    int d = mlcs.seqs.size();
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (int i = 0; i < d; i++) {
+      for (int j = i + 1; j < d; j++) {
+        char[] a = mlcs.seqs.get(i).chars;
+        char[] b = mlcs.seqs.get(j).chars;
+        tasks.add(pool.submit(new RecursiveTask<Integer>() {
+          protected Integer compute() {
+            return lcs(a, b);
+          }
+        }));
+      }
+    }
+    int bound = mlcs.maxLength;
+    for (ForkJoinTask<Integer> task : tasks) {
+      int lcs = task.join();
+      if (lcs < bound) bound = lcs;
+    }
+    return bound;
+  }
+
+  /**
+   * LCS length of two sequences,the dummy dots at both ends are excluded.
+   */
+  public static int lcs(char[] a, char[] b) {
+    int m = b.length - 2;
+    if (m <= 0 || a.length <= 2) return 0;
+    int words = (m + 63) >>> 6;
+    // match masks of b
+    Map<Character, long[]> masks = new HashMap<>();
+    for (int j = 0; j < m; j++) {
+      long[] mask = masks.computeIfAbsent(b[j + 1], c -> new long[words]);
+      mask[j >>> 6] |= 1L << (j & 63);
+    }
+    long[] v = new long[words];
+    Arrays.fill(v, -1L);
+    for (int i = 1; i < a.length - 1; i++) {
+      long[] mask = masks.get(a[i]);
+      if (null == mask) continue;
+      // v = (v + (v & mask)) | (v & ~mask)
+      long carry = 0;
+      for (int w = 0; w < words; w++) {
+        long x = v[w];
+        long u = x & mask[w];
+        long sum = x + u + carry;
+        carry = (Long.compareUnsigned(sum, x) < 0 || (carry != 0 && sum == x)) ? 1 : 0;
+        v[w] = sum | (x & ~mask[w]);
+      }
+    }
+    int zeros = 0;
+    for (int w = 0; w < words; w++) {
+      long x = v[w];
+      if (w == words - 1 && (m & 63) != 0) x |= -1L << (m & 63);
+      zeros += Long.bitCount(~x);
+    }
+    return zeros;
+  }
+}
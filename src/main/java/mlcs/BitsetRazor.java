@@ -0,0 +1,287 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Queues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Dominance filter by bitsets,for many sequences.
+ * <p>
+ * Locations are ordered by the sum of coordinates(a dominant always has a smaller sum) and cut into blocks.
+ * For every dimension a block keeps prefix bitsets:row r is the set of block locations
+ * whose coordinate is less than the r-th distinct value.
+ * A location is dominated by the block iff the AND of its rows over all dimensions is not empty.
+ * Ids in a block are ordered by the first coordinate,so only a prefix of words is ANDed.
+ * <p>
+ * A block takes dimension*(distinct coordinates+1)*BlockSize/64 longs at most,which bounds the memory.
+ * It marks the same locations as Razor3.
+ */
+public class BitsetRazor implements DominanceFilter {
+
+  /**
+   * Max count of locations in a block
+   */
+  public static final int BlockSize = 8192;
+
+  Mlcs mlcs;
+  short level;
+
+  public BitsetRazor(Mlcs mlcs, int level) {
+    this.level = (short) level;
+    this.mlcs = mlcs;
+  }
+
+  public static boolean supports(Mlcs mlcs) {
+    return mlcs.seqs.size() >= 6;
+  }
+
+  /**
+   * Using multiple thread,check locations against blocks one by one.
+   *
+   * @param pool thread pool
+   * @param locs a list of locations
+   * @return [original removed counts,new dominated counts]
+   */
+  public int[] shave(ForkJoinPool pool, ArrayList<Location> locs) {
+    long startTime = System.currentTimeMillis();
+    int n = locs.size();
+    int dimension = mlcs.seqs.size();
+    // sum of coordinates<<32|position
+    long[] order = new long[n];
+    int disabled = 0;
+    int cnt = 0;
+    for (int i = 0; i < n; i++) {
+      Location loc = locs.get(i);
+      if (loc.isDiscard()) {
+        disabled++;
+      } else {
+        long sum = 0;
+        for (short c : loc.index) sum += c;
+        order[cnt++] = (sum << 32) | i;
+      }
+    }
+    final int sortCnt = cnt;
+    pool.submit(() -> Arrays.parallelSort(order, 0, sortCnt)).join();
+    short[][] points = new short[cnt][];
+    for (int i = 0; i < cnt; i++) {
+      points[i] = locs.get((int) order[i]).index;
+    }
+
+    boolean[] dominated = new boolean[cnt];
+    Block block = new Block(dimension);
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (int from = 0; from < cnt; from += BlockSize) {
+      // locations before the block never are dominated by it
+      block.load(points, dominated, from, Math.min(cnt, from + BlockSize));
+      if (block.size == 0) continue;
+      for (int j = 0; j < dimension; j++) {
+        tasks.add(pool.submit(new Builder(block, j)));
+      }
+      for (ForkJoinTask<Integer> task : tasks) task.join();
+      tasks.clear();
+
+      List<int[]> segs = Queues.split(cnt - from, pool.getParallelism());
+      for (int[] seg : segs) {
+        tasks.add(pool.submit(new Checker(block, points, dominated, from + seg[0], from + seg[1])));
+      }
+      for (ForkJoinTask<Integer> task : tasks) task.join();
+      tasks.clear();
+    }
+
+    int marked = 0;
+    for (int i = 0; i < cnt; i++) {
+      Location loc = locs.get((int) order[i]);
+      if (dominated[i]) {
+        loc.setReserved(false);
+        marked++;
+      } else {
+        loc.setReserved(true);
+      }
+    }
+    System.out.println(this.level + " sort(" + (n - disabled) + "-" + marked + ") using " + (System.currentTimeMillis() - startTime));
+    return new int[]{disabled, marked};
+  }
+
+  /**
+   * Prefix bitsets of a block
+   */
+  static class Block {
+    final int dimension;
+    final int words = BlockSize / 64;
+    final short[][] points = new short[BlockSize][]; // ordered by the first coordinate
+    int size;
+    final short[] firsts = new short[BlockSize]; // first coordinates of points
+    final short[][] values; // dim->distinct coordinates
+    final int[] counts; // dim->count of distinct coordinates
+    final long[][] rows; // dim->rows of (counts+1)*words
+
+    Block(int dimension) {
+      this.dimension = dimension;
+      this.values = new short[dimension][BlockSize];
+      this.counts = new int[dimension];
+      this.rows = new long[dimension][];
+    }
+
+    /**
+     * Load undominated points of [from,to),ordered by the first coordinate.
+     */
+    void load(short[][] all, boolean[] dominated, int from, int to) {
+      int[] keys = new int[to - from];
+      int n = 0;
+      for (int i = from; i < to; i++) {
+        if (!dominated[i]) keys[n++] = (all[i][0] << 16) | (i - from);
+      }
+      Arrays.sort(keys, 0, n);
+      for (int k = 0; k < n; k++) {
+        points[k] = all[from + (keys[k] & 0xFFFF)];
+        firsts[k] = points[k][0];
+      }
+      size = n;
+    }
+
+    /**
+     * Whether some point in the block is less than the given one in every coordinate
+     */
+    boolean dominates(short[] p, long[] acc) {
+      int n0 = lowerBound(firsts, size, p[0]);
+      if (n0 == 0) return false;
+      int wn = (n0 + 63) >>> 6;
+      long tailMask = ((n0 & 63) == 0) ? -1L : (1L << (n0 & 63)) - 1;
+
+      int r = lowerBound(values[1], counts[1], p[1]);
+      if (r == 0) return false;
+      System.arraycopy(rows[1], r * words, acc, 0, wn);
+      acc[wn - 1] &= tailMask;
+      long any = 0;
+      for (int w = 0; w < wn; w++) any |= acc[w];
+      for (int j = 2; j < dimension && any != 0; j++) {
+        r = lowerBound(values[j], counts[j], p[j]);
+        if (r == 0) return false;
+        long[] row = rows[j];
+        int base = r * words;
+        any = 0;
+        for (int w = 0; w < wn; w++) {
+          long x = acc[w] & row[base + w];
+          acc[w] = x;
+          any |= x;
+        }
+      }
+      return any != 0;
+    }
+
+    /**
+     * count of elements in a[0,n) less than key
+     */
+    static int lowerBound(short[] a, int n, short key) {
+      int lo = 0, hi = n;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (a[mid] < key) lo = mid + 1;
+        else hi = mid;
+      }
+      return lo;
+    }
+  }
+
+  /**
+   * Build distinct values and prefix bitsets of a dimension
+   */
+  static class Builder extends RecursiveTask<Integer> {
+    Block block;
+    int dim;
+
+    Builder(Block block, int dim) {
+      this.block = block;
+      this.dim = dim;
+    }
+
+    public Integer compute() {
+      Block b = this.block;
+      int n = b.size;
+      int[] keys = new int[n];
+      for (int k = 0; k < n; k++) keys[k] = (b.points[k][dim] << 16) | k;
+      Arrays.sort(keys);
+      short[] values = b.values[dim];
+      int m = 0;
+      for (int k = 0; k < n; k++) {
+        short v = (short) (keys[k] >>> 16);
+        if (m == 0 || values[m - 1] != v) values[m++] = v;
+      }
+      b.counts[dim] = m;
+      if (dim == 0) return m; // the first dimension is the id order
+      int words = b.words;
+      long[] rows = b.rows[dim];
+      if (null == rows || rows.length < (m + 1) * words) {
+        rows = new long[(m + 1) * words];
+        b.rows[dim] = rows;
+      }
+      Arrays.fill(rows, 0, words, 0L);
+      // row r+1 = row r + points whose value is values[r]
+      int k = 0;
+      for (int r = 0; r < m; r++) {
+        int base = (r + 1) * words;
+        System.arraycopy(rows, base - words, rows, base, words);
+        while (k < n && (keys[k] >>> 16) == values[r]) {
+          int id = keys[k] & 0xFFFF;
+          rows[base + (id >>> 6)] |= 1L << (id & 63);
+          k++;
+        }
+      }
+      return m;
+    }
+  }
+
+  /**
+   * A task which checks points in range [from,to) against a block.
+   */
+  static class Checker extends RecursiveTask<Integer> {
+    Block block;
+    short[][] points;
+    boolean[] dominated;
+    int from, to;
+
+    Checker(Block block, short[][] points, boolean[] dominated, int from, int to) {
+      this.block = block;
+      this.points = points;
+      this.dominated = dominated;
+      this.from = from;
+      this.to = to;
+    }
+
+    public Integer compute() {
+      long[] acc = new long[block.words];
+      int count = 0;
+      for (int i = from; i < to; i++) {
+        if (!dominated[i] && block.dominates(points[i], acc)) {
+          dominated[i] = true;
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Queues;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * IndexTree with per-subtree bounding boxes.
+ * <p>
+ * Every node keeps the minimal coordinates of its subtree in the remaining dimensions,
+ * a subtree is skipped when its box is not less than the searched location in all of them.
+ * Boxes are built bottom-up after the layout,level by level and concurrently within a level.
+ */
+public class BoxIndexTree extends IndexTree {
+
+  /**
+   * level->node->minimal coordinates of dimension level+1..dimension-1,level 0..dimension-3
+   */
+  short[][] boxes;
+
+  public BoxIndexTree(int dimensions) {
+    super(dimensions);
+  }
+
+  public static boolean supports(Mlcs mlcs) {
+    int d = mlcs.seqs.size();
+    return d >= 4 && d <= 9;
+  }
+
+  @Override
+  public void build(ForkJoinPool pool) {
+    super.build(pool);
+    if (dimension < 3) return;
+    boxes = new short[dimension - 2][];
+    for (int i = dimension - 3; i >= 0; i--) {
+      int count = keys[i].length;
+      boxes[i] = new short[count * (dimension - 1 - i)];
+      if (null == pool) {
+        new Boxer(this, i, 0, count).invoke();
+      } else {
+        LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+        List<int[]> segs = Queues.split(count, pool.getParallelism());
+        for (int[] seg : segs) {
+          tasks.add(pool.submit(new Boxer(this, i, seg[0], seg[1])));
+        }
+        for (ForkJoinTask<Integer> task : tasks) task.join();
+      }
+    }
+  }
+
+  @Override
+  public boolean dominated(Location id) {
+    if (dimension < 3) return super.dominated(id);
+    return dominated(id.index, 0, 0, keys[0].length);
+  }
+
+  private boolean dominated(short[] index, int level, int from, int to) {
+    short[] levelKeys = keys[level];
+    short key = index[level];
+    if (level == dimension - 2) {
+      short last = index[level + 1];
+      for (int n = from; n < to && levelKeys[n] < key; n++) {
+        if (tails[n] < last) return true;
+      }
+      return false;
+    }
+    int[] first = firsts[level];
+    short[] box = boxes[level];
+    int width = dimension - 1 - level;
+    for (int n = from; n < to && levelKeys[n] < key; n++) {
+      int b = n * width;
+      int k = 0;
+      while (k < width && box[b + k] < index[level + 1 + k]) k++;
+      if (k == width && dominated(index, level + 1, first[n], first[n + 1])) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Build boxes of nodes [from,to) in a level from the next level.
+   */
+  private static class Boxer extends RecursiveTask<Integer> {
+    final BoxIndexTree tree;
+    final int level;
+    final int from, to;
+
+    Boxer(BoxIndexTree tree, int level, int from, int to) {
+      this.tree = tree;
+      this.level = level;
+      this.from = from;
+      this.to = to;
+    }
+
+    public Integer compute() {
+      BoxIndexTree t = this.tree;
+      int width = t.dimension - 1 - level;
+      short[] box = t.boxes[level];
+      int[] first = t.firsts[level];
+      short[] childKeys = t.keys[level + 1];
+      boolean lastLevel = (level + 1 == t.dimension - 2);
+      short[] childBoxes = lastLevel ? t.tails : t.boxes[level + 1];
+      int childWidth = width - 1;
+      for (int n = from; n < to; n++) {
+        int b = n * width;
+        // children are ordered by key,so the first one has the minimal
+        box[b] = childKeys[first[n]];
+        for (int k = 1; k < width; k++) box[b + k] = Short.MAX_VALUE;
+        for (int c = first[n]; c < first[n + 1]; c++) {
+          int cb = c * childWidth;
+          for (int k = 1; k < width; k++) {
+            short v = childBoxes[cb + k - 1];
+            if (v < box[b + k]) box[b + k] = v;
+          }
+        }
+      }
+      return to - from;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A level partitioned by character.
+ * <p>
+ * The character of a location is fixed by its coordinates,so successors on different characters never collide.
+ * Each partition is searched and deduplicated by its own task with a private level set,
+ * and the immediate successors are cleaned partition by partition.
+ * Dominance crosses characters, so the razor still works on the whole level(see locations()).
+ */
+class CharPartitions {
+  final LocationSet[] sets; // char->level set
+  final ArrayList<Location>[] locations; // char->slot->location
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private CharPartitions(int charCount) {
+    sets = new LocationSet[charCount];
+    locations = new ArrayList[charCount];
+  }
+
+  /**
+   * Search all reachable successors of fronts,one task per character.
+   */
+  static CharPartitions expand(AbstractCrawler crawler, ForkJoinPool pool, ArrayList<Location> fronts) {
+    Mlcs mlcs = crawler.mlcs;
+    CharPartitions partitions = new CharPartitions(mlcs.charCount());
+    LinkedList<Searcher> tasks = new LinkedList<>();
+    for (int c = 0; c < mlcs.charCount(); c++) {
+      partitions.sets[c] = mlcs.newLocationSet(fronts.size());
+      partitions.locations[c] = new ArrayList<>(fronts.size());
+      tasks.add(new Searcher(crawler, fronts, c, partitions.sets[c], partitions.locations[c]));
+      pool.submit(tasks.getLast());
+    }
+    int pruned = 0;
+    for (Searcher task : tasks) {
+      task.join();
+      pruned += task.pruned;
+    }
+    crawler.stats.pruned = pruned;
+    return partitions;
+  }
+
+  public int size() {
+    int size = 0;
+    for (LocationSet set : sets) size += set.size();
+    return size;
+  }
+
+  /**
+   * All locations of this level,partition after partition.
+   */
+  public ArrayList<Location> locations() {
+    ArrayList<Location> all = new ArrayList<>(size());
+    for (ArrayList<Location> locs : locations) all.addAll(locs);
+    return all;
+  }
+
+  /**
+   * Find and mark immediate successors,one task per character.
+   *
+   * @return the count of predecessors of end
+   */
+  public int clean(ForkJoinPool pool, Mlcs mlcs) {
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (int c = 0; c < sets.length; c++) {
+      tasks.add(pool.submit(new Cleaner(mlcs, this, c)));
+    }
+    int endPredecessorsCnt = 0;
+    for (ForkJoinTask<Integer> task : tasks) {
+      endPredecessorsCnt += task.join();
+    }
+    return endPredecessorsCnt;
+  }
+
+  /**
+   * Remove discarded locations in every partition concurrently,then collect them into one level set.
+   */
+  public LocationSet collect(ForkJoinPool pool) {
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (int c = 0; c < sets.length; c++) {
+      LocationSet set = sets[c];
+      ArrayList<Location> locs = locations[c];
+      tasks.add(pool.submit(() -> set.removeIf(slot -> locs.get(slot).isDiscard())));
+    }
+    for (ForkJoinTask<Integer> task : tasks) {
+      task.join();
+    }
+    return LocationSet.concat(sets);
+  }
+
+  /**
+   * Search the successors on one character for all fronts.
+   * A successor dominated by a reachable sibling(the successor of the same front on another character) is dropped,
+   * as BatchExpander does.
+   */
+  static class Searcher extends RecursiveTask<Integer> {
+    AbstractCrawler crawler;
+    ArrayList<Location> fronts;
+    int c;
+    LocationSet set;
+    ArrayList<Location> locs;
+    int pruned; // count of successors dropped by siblings
+
+    Searcher(AbstractCrawler crawler, ArrayList<Location> fronts, int c, LocationSet set, ArrayList<Location> locs) {
+      this.crawler = crawler;
+      this.fronts = fronts;
+      this.c = c;
+      this.set = set;
+      this.locs = locs;
+    }
+
+    public Integer compute() {
+      Mlcs mlcs = crawler.mlcs;
+      short level = crawler.currentLevel;
+      Limit limit = crawler.limit;
+      short[] next = new short[mlcs.seqs.size()];
+      short[] sibling = new short[next.length];
+      for (int i = 0, n = fronts.size(); i < n; i++) {
+        Location loc = fronts.get(i);
+        if (!loc.isDiscard() && mlcs.nextLocation(loc.index, c, next)) {
+          int mlcsLength = limit.mlcsLength();
+          int tail = mlcs.tailUpbound(next);
+          if (tail + level < mlcsLength) continue;
+          if (dominatedBySibling(mlcs, loc.index, next, sibling, mlcsLength, level)) {
+            pruned += 1;
+            continue;
+          }
+          if (set.putIfAbsent(next) < 0) {
+            Location nextLoc = new Location(next);
+            nextLoc.setTailUpbound(tail);
+            locs.add(nextLoc);
+            next = new short[next.length];
+          }
+        }
+      }
+      return locs.size();
+    }
+
+    /**
+     * Whether a reachable successor of front on another character is smaller than next in every coordinate.
+     */
+    private boolean dominatedBySibling(Mlcs mlcs, short[] front, short[] next, short[] sibling,
+                                       int mlcsLength, short level) {
+      for (int k = 0; k < mlcs.charCount(); k++) {
+        if (k == c || !mlcs.nextLocation(front, k, sibling) || sibling[0] >= next[0]) continue;
+        int j = 1;
+        while (j < next.length && sibling[j] < next[j]) j++;
+        if (j == next.length && mlcs.tailUpbound(sibling) + level >= mlcsLength) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Mark the immediate successors of one partition,the successor on character k is looked up in partition k only.
+   */
+  static class Cleaner extends RecursiveTask<Integer> {
+    Mlcs mlcs;
+    CharPartitions partitions;
+    int c;
+
+    Cleaner(Mlcs mlcs, CharPartitions partitions, int c) {
+      this.mlcs = mlcs;
+      this.partitions = partitions;
+      this.c = c;
+    }
+
+    public Integer compute() {
+      int endPredecessorsCnt = 0;
+      LocationSet[] sets = partitions.sets;
+      ArrayList<Location>[] locations = partitions.locations;
+      short[] next = new short[mlcs.seqs.size()];
+      for (Location loc : locations[c]) {
+        boolean hasNext = false;
+        for (int k = 0; k < sets.length; k++) {
+          if (mlcs.nextLocation(loc.index, k, next)) {
+            hasNext = true;
+            int slot = sets[k].indexOf(next);
+            if (slot >= 0) locations[k].get(slot).setReserved(false);
+          }
+        }
+        if (!hasNext) {
+          loc.setReserved(false);
+          endPredecessorsCnt++;
+        }
+      }
+      return endPredecessorsCnt;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.misc.FirstOrderSorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Choose a dominance filter for every level.
+ * <p>
+ * Levels with at most one undiscarded location are not filtered,some backends can not handle empty levels.
+ * Otherwise a pinned backend is always used.In auto mode:
+ * <ul>
+ *   <li>tiny levels are checked pairwise</li>
+ *   <li>2 or 3 sequences are swept</li>
+ *   <li>otherwise the backend with the least predicted cost is used.The cost per location is measured on
+ *   large levels and assumed to grow linearly with the level size.A candidate is probed again periodically
+ *   or when the level grows much larger than its measurement,the first measurement is only a warm up.
+ *   SfsRazor is a candidate only when few locations survived the previous level,
+ *   and BestOrderRazor only for a few sequences.</li>
+ * </ul>
+ * A selector keeps measurements of one search,it is not thread safe.
+ */
+public class DominanceSelector {
+
+  public static final String Auto = "auto";
+
+  public static final List<String> Backends =
+    List.of("razor", "razor2", "razor3", "sweep", "bitset", "sfs", "bos", "box", "first", "pairwise");
+
+  /**
+   * Levels not larger than it are checked pairwise
+   */
+  static final int PairwiseSize = 64;
+
+  /**
+   * Only levels not smaller than it are measured,timings of smaller ones are mostly overhead.
+   */
+  static final int ProbeSize = 4096;
+
+  /**
+   * Measurements older than it(in levels) are probed again
+   */
+  static final int ProbeInterval = 16;
+
+  /**
+   * Measurements of levels smaller than size/ProbeGrowth are probed again
+   */
+  static final int ProbeGrowth = 4;
+
+  /**
+   * SfsRazor is tried when the surviving fraction of the previous level is below it
+   */
+  static final double SfsSurvival = 0.1;
+
+  /**
+   * Backends compared in auto mode for 4 or more sequences,the tree one is box for 4-9 sequences.
+   */
+  final String[] candidates;
+
+  /**
+   * BestOrderRazor is tried when the dimension is not greater than it
+   */
+  static final int BosDimension = 6;
+
+  final Mlcs mlcs;
+  final String pinned;
+
+  // candidate->nanos per location,size and level of the last measurement
+  final double[] costs;
+  final int[] sizes;
+  final int[] measuredAt;
+  final int[] probes;
+  double survived = 1;
+
+  public DominanceSelector(Mlcs mlcs) {
+    this.mlcs = mlcs;
+    this.pinned = mlcs.dominanceFilter;
+    String tree = BoxIndexTree.supports(mlcs) ? "box" : "razor3";
+    this.candidates = new String[]{tree, "bitset", "sfs", "bos"};
+    this.costs = new double[candidates.length];
+    this.sizes = new int[candidates.length];
+    this.measuredAt = new int[candidates.length];
+    this.probes = new int[candidates.length];
+    Arrays.fill(measuredAt, -ProbeInterval - 1);
+  }
+
+  public static void check(Mlcs mlcs, String backend) {
+    if (!backend.equals(Auto) && !Backends.contains(backend)) {
+      throw new IllegalArgumentException("Unsupported dominance filter " + backend + ",using auto|"
+        + String.join("|", Backends) + " instead.");
+    }
+    if (backend.equals("sweep") && !SweepRazor.supports(mlcs)) {
+      throw new IllegalArgumentException("Dominance filter sweep needs 2 or 3 sequences.");
+    }
+  }
+
+  /**
+   * Filter a level by the chosen backend
+   *
+   * @return [original removed counts,new dominated counts]
+   */
+  public int[] shave(ForkJoinPool pool, short level, ArrayList<Location> locs) {
+    int size = 0;
+    for (Location loc : locs) {
+      if (!loc.isDiscard()) size++;
+    }
+    if (size <= 1) {
+      for (Location loc : locs) {
+        if (!loc.isDiscard()) loc.setReserved(true);
+      }
+      return new int[]{locs.size() - size, 0};
+    }
+    if (!pinned.equals(Auto)) return create(pinned, level).shave(pool, locs);
+    if (size <= PairwiseSize) return create("pairwise", level).shave(pool, locs);
+    if (SweepRazor.supports(mlcs)) return create("sweep", level).shave(pool, locs);
+
+    int c = choose(level, size);
+    long startAt = System.nanoTime();
+    int[] rs = create(candidates[c], level).shave(pool, locs);
+    if (size >= ProbeSize) {
+      probes[c] += 1;
+      if (probes[c] > 1) {
+        costs[c] = (double) (System.nanoTime() - startAt) / size;
+        sizes[c] = size;
+      }
+      measuredAt[c] = level;
+    }
+    survived = (double) (size - rs[1]) / size;
+    return rs;
+  }
+
+  /**
+   * Probe a stale candidate on a large level,otherwise the one with the least predicted cost.
+   */
+  private int choose(short level, int size) {
+    if (size >= ProbeSize) {
+      for (int c = 0; c < candidates.length; c++) {
+        if (usable(c) && (sizes[c] == 0 || level - measuredAt[c] > ProbeInterval
+          || size > ProbeGrowth * sizes[c])) return c;
+      }
+    }
+    int best = BitsetRazor.supports(mlcs) ? 1 : 0;
+    double bestCost = Double.MAX_VALUE;
+    for (int c = 0; c < candidates.length; c++) {
+      if (sizes[c] == 0 || !usable(c)) continue;
+      double cost = costs[c] * size / sizes[c];
+      if (cost < bestCost) {
+        bestCost = cost;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  private boolean usable(int c) {
+    switch (candidates[c]) {
+      case "sfs":
+        return survived < SfsSurvival;
+      case "bos":
+        return mlcs.seqs.size() <= BosDimension;
+      default:
+        return true;
+    }
+  }
+
+  DominanceFilter create(String backend, short level) {
+    switch (backend) {
+      case "razor":
+        return new Razor(mlcs, level);
+      case "razor2":
+        return new Razor2(mlcs, level);
+      case "razor3":
+        return new Razor3(mlcs, level);
+      case "sweep":
+        return new SweepRazor(mlcs, level);
+      case "bitset":
+        return new BitsetRazor(mlcs, level);
+      case "sfs":
+        return new SfsRazor(mlcs, level);
+      case "box":
+        return new BoxRazor(mlcs, level);
+      case "bos":
+        return new BestOrderRazor(mlcs, level);
+      case "first":
+        return (pool, locs) -> FirstOrderSorter.shave(level, pool, locs);
+      case "pairwise":
+        return new PairwiseRazor(mlcs, level);
+      default:
+        throw new IllegalArgumentException("Unsupported dominance filter " + backend);
+    }
+  }
+}
@@ -18,14 +18,8 @@
  */
 package mlcs;
 
-import mlcs.util.Queues;
-
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
 
 /**
  * MLCS problem exact precision crawler.
@@ -42,55 +36,56 @@ public class EPCrawler extends AbstractCrawler {
    */
   public Graph search() {
     this.currentLevel = 0;
+    this.startAt = System.currentTimeMillis();
     ArrayList<Location> fronts = new ArrayList<>();
     fronts.add(start.id);
 
-    ForkJoinPool pool = this.mlcs.newPool();
+    ForkJoinPool pool = (null == this.pool) ? this.mlcs.newPool() : this.pool;
     while (!fronts.isEmpty()) {
       this.currentLevel = (short) (this.currentLevel + 1);
-      if (this.currentLevel > limit.mlcsLength) limit.mlcsLength = this.currentLevel;
+      limit.raise(this.currentLevel);
       // all nodes in this round
-      HashMap<Location, Location> nodes = new HashMap<>();
-
-      // step 1. search successors locations using multiple threaded
-      // Each successor met the conditions for the maximum length assessment
-      List<int[]> segs = Queues.split(fronts.size(), pool.getParallelism());
-      LinkedList<ForkJoinTask<List<Links>>> tasks = new java.util.LinkedList<>();
-      for (int[] seg : segs) {
-        tasks.add(pool.submit(new SearchCrawler(this, fronts, seg[0], seg[1])));
-      }
-      for (ForkJoinTask<List<Links>> task : tasks) {
-        List<Links> pairs = task.join();
-        for (Links p : pairs) {
-          for (Location l : p.nexts) {
-            // don't drop the if,It avoids that key and value are not the same object.
-            if (!nodes.containsKey(l)) nodes.put(l, l);
-          }
-        }
-      }
+      LocationSet nodes = null;
+      CharPartitions partitions = null;
+      int endPredecessorsCnt;
+      stats.begin();
+      if (charPartitioned) {
+        // step 1,2. search successors and mark immediate successors character by character
+        partitions = CharPartitions.expand(this, pool, fronts);
+        fronts = partitions.locations();
+        stats.lap(LevelStats.Expand);
+        endPredecessorsCnt = partitions.clean(pool, mlcs);
+        stats.lap(LevelStats.Clean);
+      } else if (fused) {
+        // step 1,2. search successors and mark predecessors of end in one pass.
+        // Immediate successors are dominated by their predecessors in this level,so step 3 removes them.
+        nodes = mlcs.newLocationSet(0);
+        fronts = expand(pool, fronts, nodes);
+        endPredecessorsCnt = stats.ends;
+        stats.lap(LevelStats.Expand);
+      } else {
+        // step 1. search successors locations using multiple threaded
+        // Each successor met the conditions for the maximum length assessment
+        nodes = mlcs.newLocationSet(0);
+        fronts = expand(pool, fronts, nodes);
+        stats.lap(LevelStats.Expand);
 
-      // step 2. traverse the new location using multiple threaded
-      // find and mark 1)immediate successor,2) predecessors of end
-      fronts = new ArrayList<>(nodes.keySet());
-      segs = Queues.split(fronts.size(), pool.getParallelism());
-      LinkedList<ForkJoinTask<Integer>> cleanTasks = new java.util.LinkedList<>();
-      for (int[] seg : segs) {
-        cleanTasks.add(pool.submit(new ImmediateCleaner(this.mlcs, fronts, nodes, seg[0], seg[1])));
-      }
-      int endPredecessorsCnt = 0;
-      for (ForkJoinTask<Integer> task : cleanTasks) {
-        endPredecessorsCnt += task.join();
+        // step 2. traverse the new location using multiple threaded
+        // find and mark 1)immediate successor,2) predecessors of end
+        endPredecessorsCnt = clean(pool, fronts, nodes);
+        stats.lap(LevelStats.Clean);
       }
+      stats.located = fronts.size();
+      stats.ends = endPredecessorsCnt;
 
       //Is the last layer
-      boolean finished = nodes.size() == endPredecessorsCnt;
+      boolean finished = fronts.size() == endPredecessorsCnt;
       if (finished) {
-        HashMap<Location, Location> last = new HashMap<>();
-        for (Location l : nodes.keySet()) {
-          l.setReserved(true);
-          last.put(l, l);
-        }
-        locStore.add(this.currentLevel, last);
+        for (Location l : fronts) l.setReserved(true);
+        store(pool, fronts, nodes, partitions);
+        stats.ends = 0;
+        stats.lap(LevelStats.Store);
+        stats.commit();
         break;
       }
 
@@ -98,30 +93,32 @@ public class EPCrawler extends AbstractCrawler {
       int immediateRemoveCnt = 0;
       int nonImmediateRemoveCnt = 0;
       if (fronts.size() > 1) {
-//      Razor razor = new Razor(this.mlcs,this.currentLevel);
-        Razor3 razor = new Razor3(this.mlcs, this.currentLevel);
-        int[] rs = razor.shave(pool, fronts);
-        // int[] rs = FirstOrderSorter.shave(this.minLevel,pool,fronts);
+        int[] rs = selector.shave(pool, this.currentLevel, fronts);
         immediateRemoveCnt = rs[0];
         nonImmediateRemoveCnt = rs[1];
       } else {
-        for (Location loc : nodes.keySet()) {
+        for (Location loc : fronts) {
           if (loc.isDiscard()) immediateRemoveCnt++;
         }
       }
+      stats.immediates = immediateRemoveCnt - endPredecessorsCnt;
+      stats.dominated = nonImmediateRemoveCnt;
+      stats.lap(LevelStats.Razor);
 
       // step 4. Register the remaining points to the store
-      int allNodeCnt = nodes.size();
+      int allNodeCnt = fronts.size();
       int removeCnt = immediateRemoveCnt + nonImmediateRemoveCnt;
-      nodes.entrySet().removeIf(entry -> entry.getKey().isDiscard());
-      locStore.add(this.currentLevel, nodes);
+      store(pool, fronts, nodes, partitions);
+      stats.lap(LevelStats.Store);
+      stats.commit();
       //System.out.println(this.minLevel + " remove nodes(" + allNodeCnt + " - " + removeCnt + "(" + immediateRemoveCnt + "+" + nonImmediateRemoveCnt + "))");
-      System.out.print("\rmining level " + currentLevel + " " + (currentLevel * 100.0 / limit.mlcsLength) + "% ");
+      System.out.print("\r" + progress() + " ");
     }
-    pool.shutdown();
+    if (pool != this.pool) pool.shutdown();
     //restore the graph from back to forward.
     Graph graph = locStore.restore(this.currentLevel);
     System.out.println("\rmining complete.");
+    System.out.println(stats);
     return graph;
   }
 }
@@ -216,18 +216,27 @@ public class Graph {
    */
   public void link() {
     int l = maxLevel;
+    LocationCursor successors = mlcs.successors();
     while (l >= 0) {
+      // index the next level by slot,so the successors can be looked up without creating locations.
       HashMap<Location, Node> nexts = getLevel(l + 1);
+      LocationSet nextSet = new LocationSet(mlcs.seqs.size(), nexts.size());
+      Node[] nextNodes = new Node[nexts.size()];
+      for (Node next : nexts.values()) {
+        if (nextSet.putIfAbsent(next.id.index) < 0) nextNodes[nextSet.size() - 1] = next;
+      }
       Iterator<Node> iter = getLevel(l).values().iterator();
       boolean isLastLayer = l == maxLevel;
       while (iter.hasNext()) {
         Node n = iter.next();
-        List<Location> nextLocs = mlcs.nextLocations(n.id);
-        for (Location loc : nextLocs) {
-          Node next = nexts.get(loc);
-          if (next != null) next.link(n.id);
+        boolean hasNoneNexts = true;
+        successors.reset(n.id.index);
+        while (successors.next()) {
+          hasNoneNexts = false;
+          int slot = nextSet.indexOf(successors.index);
+          if (slot >= 0) nextNodes[slot].link(n.id);
         }
-        if ((nextLocs.isEmpty() && isLastLayer)) {
+        if ((hasNoneNexts && isLastLayer)) {
           end.link(n.id);
         }
       }
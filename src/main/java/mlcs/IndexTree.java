@@ -18,25 +18,110 @@
  */
 package mlcs;
 
+import mlcs.util.Queues;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * IndexTree is a hierarchical index tree.Its shape is similar to the B Tree.
  * It cannot be used to store nodes, just to search for dominant relationships.
  * <p>
  * Use it in three steps: add all nodes, build index, searching for the specified node.
+ * <p>
+ * The tree is laid out in flat arrays,level by level.Nodes of level i are distinct prefixes of length i+1,
+ * children of a node are contiguous in the next level and ordered by key.
+ * Building sorts the locations lexicographically and derives every level from the sorted order,
+ * so no per-node map is created.
  */
 public class IndexTree {
-  IndexVector root = new IndexVector(true);
+  final int dimension;
+  short[][] points = new short[16][];
+  int size;
+
+  /**
+   * level->keys of nodes,level 0..dimension-2
+   */
+  short[][] keys;
+  /**
+   * level->first child of node in next level,firsts[i][n+1] is the end of its children
+   */
+  int[][] firsts;
+  /**
+   * minimal last coordinate of nodes in level dimension-2
+   */
+  short[] tails;
 
   public IndexTree(int dimensions) {
+    this.dimension = dimensions;
   }
 
   public void build() {
-    if (root.children.isEmpty()) {
-      root.minKey = Short.MAX_VALUE;
+    build(null);
+  }
+
+  /**
+   * Sort and lay out the tree
+   *
+   * @param pool sort and lay out concurrently if not null
+   */
+  public void build(ForkJoinPool pool) {
+    int levels = Math.max(dimension - 1, 1);
+    if (size == 0) {
+      keys = new short[levels][0];
+      firsts = new int[levels][1];
+      tails = new short[0];
+      return;
+    }
+    short[][] sorted = points;
+    List<int[]> segs;
+    if (null == pool) {
+      Arrays.sort(sorted, 0, size, Arrays::compare);
+      segs = Queues.split(size, 1);
+    } else {
+      pool.submit(() -> Arrays.parallelSort(sorted, 0, size, Arrays::compare)).join();
+      segs = Queues.split(size, pool.getParallelism());
+    }
+    // 1. count new nodes of every level in segments
+    Layout[] layouts = new Layout[segs.size()];
+    for (int s = 0; s < layouts.length; s++) {
+      layouts[s] = new Layout(this, segs.get(s)[0], segs.get(s)[1]);
+    }
+    invokeAll(pool, layouts);
+    // 2. offsets of segments
+    int[] counts = new int[levels];
+    for (Layout layout : layouts) {
+      for (int i = 0; i < levels; i++) {
+        layout.offsets[i] = counts[i];
+        counts[i] += layout.counts[i];
+      }
+    }
+    keys = new short[levels][];
+    firsts = new int[levels][];
+    for (int i = 0; i < levels; i++) {
+      keys[i] = new short[counts[i]];
+      firsts[i] = new int[counts[i] + 1];
+      firsts[i][counts[i]] = (i + 1 < levels) ? counts[i + 1] : 0;
+    }
+    tails = new short[counts[levels - 1]];
+    // 3. fill segments
+    for (Layout layout : layouts) {
+      layout.reinitialize();
+      layout.filling = true;
+    }
+    invokeAll(pool, layouts);
+    points = null;
+  }
+
+  private static void invokeAll(ForkJoinPool pool, Layout[] layouts) {
+    if (null == pool) {
+      for (Layout layout : layouts) layout.invoke();
     } else {
-      root.build();
+      LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+      for (Layout layout : layouts) tasks.add(pool.submit(layout));
+      for (ForkJoinTask<Integer> task : tasks) task.join();
     }
   }
 
@@ -73,173 +158,110 @@ public class IndexTree {
    * @return
    */
   public boolean dominated(Location id) {
-    return dominated(root, id.index, 0);
+    short[] index = id.index;
+    if (dimension == 1) return tails.length > 0 && tails[0] < index[0];
+    return dominated(index, 0, 0, keys[0].length);
   }
 
   /**
-   * if exists dominant location from given dimension
+   * if exists dominant location in nodes [from,to) of the given level
    *
-   * @param vector       search vector
-   * @param index        position information
-   * @param dimentionIdx for which dimension
+   * @param index position information
+   * @param level for which dimension
    * @return true if exist at least one dominant
    */
-  private boolean dominated(IndexVector vector, short[] index, int dimentionIdx) {
-    if (dimentionIdx == index.length - 1) {
-      return vector.containLess(index[dimentionIdx]);
-    } else {
-      IndexVector elem = vector.findFirstLess(index[dimentionIdx]);
-      if (elem == null) return false;
-      int searchIdx = 0;
-      while (elem != null) {
-        boolean subResult = dominated(elem, index, dimentionIdx + 1);
-        if (subResult) return true;
-        searchIdx += 1;
-        elem = vector.findLess(searchIdx, index[dimentionIdx]);
+  private boolean dominated(short[] index, int level, int from, int to) {
+    short[] levelKeys = keys[level];
+    short key = index[level];
+    if (level == dimension - 2) {
+      short last = index[level + 1];
+      for (int n = from; n < to && levelKeys[n] < key; n++) {
+        if (tails[n] < last) return true;
       }
-      return false;
-    }
-  }
-
-  /**
-   * 展平递归的算法，但是效果不是很好
-   */
-  public boolean existPrior2(Location id) {
-    Slot[] slots = new Slot[id.index.length];
-    for (int i = 0; i < id.index.length; i++) {
-      slots[i] = new Slot(null, 0);
-    }
-    int d = 0;
-    slots[d].vector = root;
-    short[] index = id.index;
-    int lastIdx = index.length - 1;
-    while (d > -1) {
-      Slot slot = slots[d];
-      if (d == lastIdx) {
-        if (slot.vector.containLess(index[d])) return true;
-        d--;
-      } else {
-        IndexVector next = slot.vector.findLess(slot.idx++, index[d]);
-        if (next == null) {
-          d--;
-        } else {
-          ++d;
-          slots[d].vector = next;
-          slots[d].idx = 0;
-        }
+    } else {
+      int[] first = firsts[level];
+      for (int n = from; n < to && levelKeys[n] < key; n++) {
+        if (dominated(index, level + 1, first[n], first[n + 1])) return true;
       }
     }
     return false;
   }
 
-  private static class Slot {
-    IndexVector vector;
-    int idx;
-
-    public Slot(IndexVector vector, int idx) {
-      this.vector = vector;
-      this.idx = idx;
-    }
-  }
-
   /**
    * Add a location to the tree
    *
    * @param id
    */
   public void put(Location id) {
-    short[] index = id.index;
-    IndexVector cur = root;
-    int len = index.length;
-    int last = index.length - 1;
-    int initLast = index.length - 2;
-    for (int i = 0; i < len; i++) {
-      if (i < last) {
-        cur = cur.getOrCreate(index[i], i < initLast);
-      } else {
-        cur.setMinimal(index[i]);
-      }
-    }
+    if (size == points.length) points = Arrays.copyOf(points, size * 2);
+    points[size++] = id.index;
   }
 
   /**
-   * A index vector, contains children groups.
+   * Lay out sorted points of [from,to) into levels.
+   * A point starts new nodes from the first dimension in which it differs from the previous one.
+   * The first pass counts new nodes,the second one fills them from the offsets.
    */
-  private static class IndexVector {
-    Map<Short, IndexVector> children;
-    short[] orderedKeys;
-    IndexVector[] orderedElems;
-    short minKey = -1;
-
-    IndexVector(boolean createMap) {
-      if (createMap) children = new HashMap<>();
-    }
-
-    public IndexVector getOrCreate(short idx, boolean initMap) {
-      IndexVector vector = children.get(idx);
-      if (null == vector) {
-        vector = new IndexVector(initMap);
-        children.put(idx, vector);
-        return vector;
-      } else {
-        return vector;
-      }
-    }
-
-    public IndexVector get(short idx) {
-      return children.get(idx);
-    }
+  private static class Layout extends RecursiveTask<Integer> {
+    final IndexTree tree;
+    final int from, to;
+    final int[] counts;
+    final int[] offsets;
+    boolean filling;
 
-    public void setMinimal(short idx) {
-      if (minKey < 0 || idx < minKey) {
-        minKey = idx;
-      }
+    Layout(IndexTree tree, int from, int to) {
+      this.tree = tree;
+      this.from = from;
+      this.to = to;
+      int levels = Math.max(tree.dimension - 1, 1);
+      this.counts = new int[levels];
+      this.offsets = new int[levels];
     }
 
     /**
-     * find element less than end from beginIdx
-     *
-     * @param end exclusive
-     * @return
+     * first level in which the k-th point starts a new node
      */
-    private IndexVector findFirstLess(short key) {
-      return (minKey < key) ? orderedElems[0] : null;
-    }
-
-    private boolean containLess(short key) {
-      return key > minKey;
+    private int diff(short[][] points, int k) {
+      if (k == 0) return 0;
+      int m = Arrays.mismatch(points[k - 1], points[k]);
+      return (m < 0) ? tree.dimension : m;
     }
 
-    private IndexVector findLess(int beginIdx, short key) {
-      if (beginIdx < orderedKeys.length && orderedKeys[beginIdx] < key) {
-        return orderedElems[beginIdx];
-      } else {
-        return null;
+    public Integer compute() {
+      short[][] points = tree.points;
+      int dimension = tree.dimension;
+      if (dimension == 1) {
+        if (filling) {
+          if (from == 0) tree.tails[0] = points[0][0];
+        } else {
+          counts[0] = (from == 0) ? 1 : 0;
+        }
+        return to - from;
       }
-    }
-
-    /**
-     * Build inner index,Convert hashmap to ordered keys and elements
-     */
-    public void build() {
-      if (orderedKeys == null && children != null && !children.isEmpty()) {
-        orderedKeys = new short[children.size()];
-        int i = 0;
-        Iterator<Short> iter = children.keySet().iterator();
-        while (iter.hasNext()) {
-          orderedKeys[i] = iter.next();
-          i += 1;
+      int last = dimension - 2;
+      if (!filling) {
+        for (int k = from; k < to; k++) {
+          for (int i = diff(points, k); i <= last; i++) counts[i]++;
         }
-        Arrays.sort(orderedKeys);
-        orderedElems = new IndexVector[orderedKeys.length];
-        for (int j = 0; j < orderedKeys.length; j++) {
-          IndexVector elem = children.get(orderedKeys[j]);
-          orderedElems[j] = elem;
-          elem.build();
+      } else {
+        short[][] keys = tree.keys;
+        int[][] firsts = tree.firsts;
+        int[] pos = offsets;
+        for (int k = from; k < to; k++) {
+          short[] point = points[k];
+          int d = diff(points, k);
+          if (d > last) continue;
+          for (int i = d; i < last; i++) {
+            keys[i][pos[i]] = point[i];
+            firsts[i][pos[i]] = pos[i + 1];
+            pos[i]++;
+          }
+          keys[last][pos[last]] = point[last];
+          tree.tails[pos[last]] = point[last + 1];
+          pos[last]++;
         }
-        minKey = orderedKeys[0];
-        children = null;
       }
+      return to - from;
     }
   }
 
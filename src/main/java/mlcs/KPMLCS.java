@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static mlcs.util.FileSearcher.*;
 
@@ -15,9 +16,12 @@ public class KPMLCS {
   public static void main(String[] args) throws Exception {
     if (args.length == 0) {
       System.out.println("Usage:KPMLCS /path/to/your/data/file algo=[ep|ap|quick_ap] [other=value]");
-      System.out.println("      KPMLCS /path/to/your/data/file algo=ep");
-      System.out.println("      KPMLCS /path/to/your/data/file algo=ap [presison=0.2] [minReserved=500]");
+      System.out.println("      KPMLCS /path/to/your/data/file algo=ep [charPartition=false] [zOrder=false] [fused=true] [background=false]");
+      System.out.println("      KPMLCS /path/to/your/data/file algo=ap [presison=0.2] [minReserved=500] [charPartition=false] [zOrder=false] [fused=true] [background=false]");
       System.out.println("      KPMLCS /path/to/your/data/file algo=quick_ap [estimateCount=length] [maxRetry=0] [increment=length/2]");
+      System.out.println("      KPMLCS /path/to/your/data/file algo=quick_ap [estimateCount=length] [increment=length] [estimateBudget=seconds] [estimateWidths=4]");
+      System.out.println("      common options [tailBound=char|pair|subset[,...]] [pairing=chain|all] [band=0]");
+      System.out.println("      common options [razor=auto|razor|razor2|razor3|sweep|bitset|sfs|bos|box|first|pairwise]");
       return;
     }
     String algorithm = "quick_ap";
@@ -59,13 +63,16 @@ public class KPMLCS {
    */
   public static void ep(File sourceFile, Map<String, String> arguments) throws IOException {
     long startAt = System.currentTimeMillis();
-    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile));
+    Mlcs mlcs = buildMlcs(sourceFile, arguments);
     LocationStore store = buildStore(mlcs);
-    int maxLevel = estimateLength(mlcs, arguments);
-    System.out.println("obtain max length " + maxLevel);
+    int maxLevel = startLength(mlcs, arguments);
+    System.out.println("obtain max length " + maxLevel + " (upbound " + mlcs.upperBound + ")");
     Limit limit = new Limit(mlcs.maxLength, maxLevel);
     EPCrawler crawler = new EPCrawler(mlcs, store, limit);
-    Graph graph = crawler.search();
+    crawler.charPartitioned = Boolean.parseBoolean(arguments.getOrDefault("charPartition", "false"));
+    crawler.zOrdered = Boolean.parseBoolean(arguments.getOrDefault("zOrder", "false"));
+    crawler.fused = Boolean.parseBoolean(arguments.getOrDefault("fused", "true"));
+    Graph graph = search(crawler, arguments);
     String resultFile = getOutFile(sourceFile, "ep_" + getFileShortName(sourceFile) + ".txt");
     statResult(graph, store, resultFile, startAt);
   }
@@ -79,7 +86,7 @@ public class KPMLCS {
    */
   public static void ap(File sourceFile, Map<String, String> arguments) throws IOException {
     long startAt = System.currentTimeMillis();
-    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile));
+    Mlcs mlcs = buildMlcs(sourceFile, arguments);
     float precision = Float.parseFloat(arguments.getOrDefault("precision", "0.2"));
     int minReserved = Integer.parseInt(arguments.getOrDefault("minReserved", String.valueOf(mlcs.maxLength)));
     int estimateCount = Integer.parseInt(arguments.getOrDefault("estimateCount", String.valueOf(mlcs.maxLength)));
@@ -91,11 +98,14 @@ public class KPMLCS {
       System.exit(1);
     }
     LocationStore store = buildStore(mlcs);
-    int maxLevel = estimateLength(mlcs, arguments);
-    System.out.println("obtain max length " + maxLevel);
+    int maxLevel = startLength(mlcs, arguments);
+    System.out.println("obtain max length " + maxLevel + " (upbound " + mlcs.upperBound + ")");
     Limit limit = new Limit(mlcs.maxLength, maxLevel);
     APCrawler apCrawler = new APCrawler(mlcs, store, limit, precision, minReserved);
-    Graph graph = apCrawler.search();
+    apCrawler.charPartitioned = Boolean.parseBoolean(arguments.getOrDefault("charPartition", "false"));
+    apCrawler.zOrdered = Boolean.parseBoolean(arguments.getOrDefault("zOrder", "false"));
+    apCrawler.fused = Boolean.parseBoolean(arguments.getOrDefault("fused", "true"));
+    Graph graph = search(apCrawler, arguments);
     String resultFile = getOutFile(sourceFile, "ap_" + getFileShortName(sourceFile) + "_" + precision + ".txt");
     statResult(graph, store, resultFile, startAt);
   }
@@ -109,10 +119,26 @@ public class KPMLCS {
    */
   public static void quickAp(File sourceFile, Map<String, String> arguments) throws IOException {
     long startAt = System.currentTimeMillis();
-    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile));
+    Mlcs mlcs = buildMlcs(sourceFile, arguments);
     int mlcsLength = estimateLength(mlcs, arguments);
     long endAt = System.currentTimeMillis();
-    System.out.println("file:" + sourceFile + " n=" + mlcs.maxLength + " length=" + mlcsLength + " using:" + Stopwatch.format(endAt - startAt));
+    System.out.println("file:" + sourceFile + " n=" + mlcs.maxLength + " length=" + mlcsLength + " upbound=" + mlcs.upperBound + " using:" + Stopwatch.format(endAt - startAt));
+  }
+
+  private static Mlcs buildMlcs(File sourceFile, Map<String, String> arguments) throws IOException {
+    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile));
+    mlcs.useDominanceFilter(arguments.getOrDefault("razor", DominanceSelector.Auto));
+    System.out.println("obtain length upbound " + mlcs.boundLength());
+    for (String tailBound : arguments.getOrDefault("tailBound", "char").split(",")) {
+      if (tailBound.equals("pair")) {
+        mlcs.usePairBound(arguments.getOrDefault("pairing", PairBound.Chain));
+      } else if (tailBound.equals("subset")) {
+        mlcs.useSubsetBound(Integer.parseInt(arguments.getOrDefault("band", "0")));
+      } else if (!tailBound.equals("char")) {
+        throw new IllegalArgumentException("Unsupported tailBound " + tailBound + ",using char|pair|subset instead.");
+      }
+    }
+    return mlcs;
   }
 
   private static short estimateLength(Mlcs mlcs, Map<String, String> arguments) {
@@ -120,9 +146,54 @@ public class KPMLCS {
     int estimateCount = Integer.parseInt(arguments.getOrDefault("estimateCount", String.valueOf(defaultEstimateCount)));
     int maxRetry = Integer.parseInt(arguments.getOrDefault("maxRetry", "0"));
     int increment = Integer.parseInt(arguments.getOrDefault("increment", String.valueOf(defaultEstimateCount)));
+    if (arguments.containsKey("estimateBudget")) {
+      long budget = (long) (Double.parseDouble(arguments.get("estimateBudget")) * 1000);
+      int widths = Integer.parseInt(arguments.getOrDefault("estimateWidths", "4"));
+      return QuickAP.estimateLength(mlcs, estimateCount, increment, widths, budget);
+    }
     return QuickAP.estimateLength(mlcs, estimateCount, maxRetry, increment);
   }
 
+  private static boolean isBackground(Map<String, String> arguments) {
+    return Boolean.parseBoolean(arguments.getOrDefault("background", "false"));
+  }
+
+  /**
+   * Length to start crawling with,a greedy one point beam in background mode.
+   */
+  private static short startLength(Mlcs mlcs, Map<String, String> arguments) {
+    return isBackground(arguments) ? QuickAP.estimateLength(mlcs, 1, 0) : estimateLength(mlcs, arguments);
+  }
+
+  /**
+   * Search the graph,in background mode a QuickAP.Improver raises the limit with the same pool meanwhile.
+   */
+  private static Graph search(AbstractCrawler crawler, Map<String, String> arguments) {
+    if (!isBackground(arguments)) return crawler.search();
+
+    Mlcs mlcs = crawler.mlcs;
+    int estimateCount = Integer.parseInt(arguments.getOrDefault("estimateCount", String.valueOf(mlcs.maxLength)));
+    int increment = Integer.parseInt(arguments.getOrDefault("increment", String.valueOf(mlcs.maxLength)));
+    int maxRetry = Math.max(1, Integer.parseInt(arguments.getOrDefault("maxRetry", "3")));
+    ForkJoinPool pool = mlcs.newPool();
+    QuickAP.Improver improver = new QuickAP.Improver(mlcs, pool, crawler.limit, estimateCount, increment, maxRetry);
+    Thread improving = new Thread(improver, "mlcs-improver");
+    improving.setDaemon(true);
+    improving.start();
+    crawler.pool = pool;
+    try {
+      return crawler.search();
+    } finally {
+      improver.stop();
+      try {
+        improving.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      pool.shutdown();
+    }
+  }
+
   private static void statResult(Graph graph, LocationStore store, String resultFile, long startAt) {
     Result result = graph.stat(store.totalSize, store.maxSize, startAt);
     System.out.println(result.buildResultString());
@@ -133,8 +204,9 @@ public class KPMLCS {
 
   private static LocationStore buildStore(Mlcs mlcs) {
     long m = Runtime.getRuntime().maxMemory() / 1024 / 1024; // Mb
-    //Location(array(seqs_size*2)8 + hashcode4+reserved1),
-    int nodePerMB = (int) (1000000 / (2 * mlcs.seqs.size() + 4 + 8 + 1) * 0.75 * 0.2);
+    //LocationSet slot(seqs_size*2) + table entry(4/0.5 load factor),or a sorted long key in packed mode.
+    int nodeBytes = mlcs.serializer.packable ? 8 : 2 * mlcs.seqs.size() + 8;
+    int nodePerMB = (int) (1000000 / nodeBytes * 0.75 * 0.2);
     return new LocationStore(mlcs, m * nodePerMB);
   }
 
@@ -0,0 +1,87 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Stopwatch;
+
+/**
+ * Counters and phase times of the level pipeline,accumulated over all levels.
+ * <p>
+ * Every located point ends up as a predecessor of end,a immediate successor,a dominated one,
+ * a cut one(not selected by TopK of the approximate crawler) or a reserved one.
+ * The fused pipeline leaves immediate successors to the razor,so they are counted as dominated there,
+ * but the reserved count is the same as the phased pipeline.
+ * Successors dropped by their siblings during expansion are never located,they are counted as pruned.
+ */
+class LevelStats {
+  static final int Expand = 0;
+  static final int Clean = 1;
+  static final int Razor = 2;
+  static final int Store = 3;
+  static final String[] Phases = {"expand", "clean", "razor", "store"};
+
+  // counters of current level
+  int pruned, located, ends, immediates, dominated, cut;
+
+  long levels, allPruned, allLocated, allEnds, allImmediates, allDominated, allCut, allReserved;
+  final long[] times = new long[Phases.length];
+  private long lapAt;
+
+  /**
+   * Start a new level
+   */
+  void begin() {
+    pruned = located = ends = immediates = dominated = cut = 0;
+    lapAt = System.nanoTime();
+  }
+
+  /**
+   * Charge the time since last lap to the phase
+   */
+  void lap(int phase) {
+    long now = System.nanoTime();
+    times[phase] += now - lapAt;
+    lapAt = now;
+  }
+
+  /**
+   * Accumulate current level
+   */
+  void commit() {
+    levels += 1;
+    allPruned += pruned;
+    allLocated += located;
+    allEnds += ends;
+    allImmediates += immediates;
+    allDominated += dominated;
+    allCut += cut;
+    allReserved += located - ends - immediates - dominated - cut;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(levels).append(" levels,located ").append(allLocated).append(" = end predecessors ").append(allEnds)
+      .append(" + immediate ").append(allImmediates).append(" + dominated ").append(allDominated)
+      .append(" + cut ").append(allCut).append(" + reserved ").append(allReserved).append(",pruned siblings ").append(allPruned).append("\n");
+    for (int i = 0; i < Phases.length; i++) {
+      sb.append(i == 0 ? "" : ",").append(Phases[i]).append(" ").append(Stopwatch.format(times[i] / 1000000));
+    }
+    return sb.toString();
+  }
+}
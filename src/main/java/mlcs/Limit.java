@@ -18,16 +18,39 @@
  */
 package mlcs;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Mlcs problem limit
+ * <p>
+ * The mlcs length is a lower bound of the solution,shared by crawlers and estimators running at the same time.
+ * It only grows,and every reader sees the latest value.
  */
 public class Limit {
   public final int maxLength; // the max length of origin sequences
-  public int mlcsLength; // the max length of solution.
+  private final AtomicInteger mlcsLength; // the max length of solution.
 
   public Limit(int maxLength, int mlcsLength) {
     this.maxLength = maxLength;
-    this.mlcsLength = mlcsLength;
+    this.mlcsLength = new AtomicInteger(mlcsLength);
+  }
+
+  public int mlcsLength() {
+    return mlcsLength.get();
+  }
+
+  /**
+   * Raise the mlcs length to given length,a shorter one is ignored.
+   *
+   * @return true if the length is raised
+   */
+  public boolean raise(int length) {
+    int current = mlcsLength.get();
+    while (length > current) {
+      if (mlcsLength.compareAndSet(current, length)) return true;
+      current = mlcsLength.get();
+    }
+    return false;
   }
 
   @Override
@@ -30,6 +30,8 @@ public class Location implements Serializable {
 
   public short[] index;// position information
   private int hashCode; // hash code
+  private int score; // sum and max of index
+  short tail = -1; // tail upbound, -1 unknown
   byte status = (byte) 0; // 1 reserved, 0 unknown, -1 discard
 
   public boolean isUnknown() {
@@ -55,8 +57,23 @@ public class Location implements Serializable {
    * @return
    */
   public boolean canReach(Mlcs mlcs, Limit limit, short level) {
-    int possible = mlcs.tailUpbound(index);
-    return possible + level >= limit.mlcsLength;
+    int possible = tailUpbound(mlcs);
+    return possible + level >= limit.mlcsLength();
+  }
+
+  /**
+   * Tail upbound of this location,calculated at most once.
+   */
+  public int tailUpbound(Mlcs mlcs) {
+    if (tail < 0) tail = (short) mlcs.tailUpbound(index);
+    return tail;
+  }
+
+  /**
+   * Record a tail upbound already calculated by the creator
+   */
+  public void setTailUpbound(int tail) {
+    this.tail = (short) tail;
   }
 
   //FIXME
@@ -87,6 +104,18 @@ public class Location implements Serializable {
   }
 
   public int score() {
+    return score;
+  }
+
+  /**
+   * Rank of the location in ScoreSorter order,smaller is better.
+   * Higher tail upbound first,then lower score.
+   */
+  public long rank(Mlcs mlcs) {
+    return ((long) (Short.MAX_VALUE - tailUpbound(mlcs)) << 32) | score;
+  }
+
+  private int buildScore() {
     int sum = 0;
     short max = 0;
     for (short a : index) {
@@ -137,6 +166,7 @@ public class Location implements Serializable {
   public Location(short[] index) {
     this.index = index;
     this.hashCode = buildHashCode();
+    this.score = buildScore();
   }
 
   private int buildHashCode() {
@@ -180,7 +210,7 @@ public class Location implements Serializable {
 
     public int compare(Location o1, Location o2) {
       if (!o1.isDiscard() && !o2.isDiscard()) {
-        int tailCmp = mlcs.tailUpbound(o1.index) - mlcs.tailUpbound(o2.index);
+        int tailCmp = o1.tailUpbound(mlcs) - o2.tailUpbound(mlcs);
         return (tailCmp == 0) ? o1.score() - o2.score() : -tailCmp;
       } else if (!o1.isDiscard() && o2.isDiscard()) {
         return -1;
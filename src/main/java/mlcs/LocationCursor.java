@@ -0,0 +1,145 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+/**
+ * A reusable cursor over the successors(or predecessors) of a location.
+ * <p>
+ * It writes the coordinates into its own buffer <code>index</code>, which is overwritten by every next(),
+ * so walking the successors allocates nothing. Call toLocation() to keep one.
+ * <pre>
+ *   LocationCursor cursor = mlcs.successors();
+ *   cursor.reset(loc.index);
+ *   while (cursor.next()) {
+ *     // use cursor.index
+ *   }
+ * </pre>
+ * A cursor is not thread safe, every thread should create its own.
+ */
+public class LocationCursor {
+  final Mlcs mlcs;
+  final short[][] table; // seq->pos->char
+  final int charCount;
+  final boolean forward;
+  /**
+   * coordinates of current successor
+   */
+  public final short[] index;
+  /**
+   * character index of current successor
+   */
+  public int charIndex;
+  /**
+   * tail upbound of current successor,-1 if not calculated(not reachable mode)
+   */
+  public int tail;
+
+  short[] current;
+  int[] rows; // offset of current position in table of each seq
+  int nextChar;
+  boolean reachable;
+  int mlcsLength;
+  short level;
+
+  LocationCursor(Mlcs mlcs, short[][] table, boolean forward) {
+    this.mlcs = mlcs;
+    this.table = table;
+    this.charCount = mlcs.charCount;
+    this.forward = forward;
+    this.index = new short[mlcs.seqs.size()];
+    this.rows = new int[index.length];
+  }
+
+  /**
+   * Walk all successors of current location.
+   */
+  public LocationCursor reset(short[] current) {
+    this.current = current;
+    for (int j = 0; j < current.length; j++) {
+      rows[j] = current[j] * charCount;
+    }
+    this.nextChar = 0;
+    this.reachable = false;
+    return this;
+  }
+
+  /**
+   * Walk the reachable successors of current location,
+   * which is possible to reach the end point on the longest path.
+   */
+  public LocationCursor reset(short[] current, int mlcsLength, short level) {
+    reset(current);
+    this.reachable = true;
+    this.mlcsLength = mlcsLength;
+    this.level = level;
+    return this;
+  }
+
+  /**
+   * Move to next successor
+   *
+   * @return false if there is no more successors
+   */
+  public boolean next() {
+    while (nextChar < charCount) {
+      int c = nextChar++;
+      if (fill(c)) {
+        if (reachable) {
+          tail = mlcs.tailUpbound(index);
+          if (tail + level < mlcsLength) continue;
+        } else {
+          tail = -1;
+        }
+        charIndex = c;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean fill(int c) {
+    short[][] table = this.table;
+    int[] rows = this.rows;
+    short[] index = this.index;
+    if (forward) {
+      int maxLength = mlcs.maxLength;
+      for (int j = 0; j < index.length; j++) {
+        short successor = table[j][rows[j] + c];
+        if (successor < 0 || successor > maxLength) return false;
+        index[j] = successor;
+      }
+    } else {
+      for (int j = 0; j < index.length; j++) {
+        short predecessor = table[j][rows[j] + c];
+        if (predecessor <= 0) return false;
+        index[j] = predecessor;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Materialize the current successor
+   */
+  public Location toLocation() {
+    Location loc = new Location(index.clone());
+    if (tail >= 0) loc.setTailUpbound(tail);
+    return loc;
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * LocationSet is a open-addressing hash set of locations.
+ * <p>
+ * The coordinates are stored inline in a flat short slab, slot by slot in insertion order,
+ * so a point costs dimension*2 bytes plus a table entry,instead of a HashMap entry,a Location and a short[].
+ * Slot ids are dense ([0,size)) and stable until the next removeIf or trim.
+ * <p>
+ * When a whole location fits in one long(see Serializer.packable), the set works in packed mode:
+ * every slot is a single long key, hashing and equality are single word operations.
+ * A trimmed packed set drops its hash table and keeps only a sorted long[], using binary search for lookups.
+ * <p>
+ * It is not thread safe for writing, concurrent reading (indexOf/contains) is allowed.
+ * For parallel searching, reserve enough capacity first, then multiple threads can use the lock-free putIfAbsentConcurrently.
+ */
+public class LocationSet implements Iterable<Location> {
+  private static final float LOAD_FACTOR = 0.5f;
+  private static final int BUSY = -1; // a bucket claimed by a concurrent writer,its slot is not published yet.
+  private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(int[].class);
+  private static final VarHandle SIZE;
+
+  static {
+    try {
+      SIZE = MethodHandles.lookup().findVarHandle(LocationSet.class, "size", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  final int dimension;
+  final Serializer packer; // not null in packed mode
+  short[] slab; // slot->coordinates
+  long[] keys; // slot->packed key
+  int[] table; // hash bucket->slot+1, 0 means empty
+  int mask;
+  int size;
+  boolean sorted; // packed keys are sorted and table is dropped
+
+  public LocationSet(int dimension) {
+    this(dimension, 16);
+  }
+
+  public LocationSet(int dimension, int expectedSize) {
+    this(dimension, null, expectedSize);
+  }
+
+  /**
+   * Create a set in packed mode if the serializer can pack locations into long.
+   */
+  public LocationSet(Serializer serializer, int expectedSize) {
+    this(serializer.dimension, serializer.packable ? serializer : null, expectedSize);
+  }
+
+  private LocationSet(int dimension, Serializer packer, int expectedSize) {
+    this.dimension = dimension;
+    this.packer = packer;
+    int capacity = Math.max(expectedSize, 2);
+    newTable(tableSizeFor((int) (capacity / LOAD_FACTOR)));
+    if (null == packer) this.slab = new short[capacity * dimension];
+    else this.keys = new long[capacity];
+  }
+
+  /**
+   * Concatenate disjoint sets into one set.
+   * The slots of parts[i] are placed after those of parts[i-1],so the order of slots are kept.
+   *
+   * @param parts disjoint sets sharing the same dimension and mode
+   * @return
+   */
+  public static LocationSet concat(LocationSet[] parts) {
+    int total = 0;
+    for (LocationSet part : parts) total += part.size;
+    LocationSet first = parts[0];
+    LocationSet rs = new LocationSet(first.dimension, first.packer, total);
+    int d = rs.dimension;
+    for (LocationSet part : parts) {
+      if (null == rs.packer) System.arraycopy(part.slab, 0, rs.slab, rs.size * d, part.size * d);
+      else System.arraycopy(part.keys, 0, rs.keys, rs.size, part.size);
+      rs.size += part.size;
+    }
+    rs.rehash(rs.table.length);
+    return rs;
+  }
+
+  /**
+   * Mix all coordinates into one hash,using a 64 bit multiply-xorshift finalizer.
+   */
+  static int hash(short[] index, int offset, int dimension) {
+    long h = 0x9E3779B97F4A7C15L;
+    for (int i = offset, end = offset + dimension; i < end; i++) {
+      h = (h ^ (index[i] & 0xFFFF)) * 0xBF58476D1CE4E5B9L;
+      h ^= h >>> 31;
+    }
+    h *= 0x94D049BB133111EBL;
+    h ^= h >>> 29;
+    return (int) h;
+  }
+
+  static int hash(long key) {
+    long h = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+    h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private static int tableSizeFor(int n) {
+    int cap = 1;
+    while (cap < n) cap <<= 1;
+    return Math.max(cap, 4);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isPacked() {
+    return null != packer;
+  }
+
+  /**
+   * Find the slot of given coordinates
+   *
+   * @param index
+   * @return slot id or -1 if absent
+   */
+  public int indexOf(short[] index) {
+    if (null != packer) return indexOf(packer.pack(index));
+    int[] table = this.table;
+    int mask = this.mask;
+    int b = hash(index, 0, dimension) & mask;
+    while (true) {
+      int s = table[b];
+      if (s == 0) return -1;
+      if (equalsAt(s - 1, index)) return s - 1;
+      b = (b + 1) & mask;
+    }
+  }
+
+  /**
+   * Find the slot of given packed key,only supported in packed mode.
+   *
+   * @param key
+   * @return slot id or -1 if absent
+   */
+  public int indexOf(long key) {
+    if (sorted) {
+      int s = Arrays.binarySearch(keys, 0, size, key);
+      return s < 0 ? -1 : s;
+    }
+    int[] table = this.table;
+    long[] keys = this.keys;
+    int mask = this.mask;
+    int b = hash(key) & mask;
+    while (true) {
+      int s = table[b];
+      if (s == 0) return -1;
+      if (keys[s - 1] == key) return s - 1;
+      b = (b + 1) & mask;
+    }
+  }
+
+  public boolean contains(short[] index) {
+    return indexOf(index) >= 0;
+  }
+
+  public boolean contains(long key) {
+    return indexOf(key) >= 0;
+  }
+
+  public boolean contains(Location loc) {
+    return indexOf(loc.index) >= 0;
+  }
+
+  /**
+   * Add coordinates to the set if not exists.
+   *
+   * @param index
+   * @return the existed slot id,or -(slot+1) if it is newly added
+   */
+  public int putIfAbsent(short[] index) {
+    if (null != packer) return putIfAbsent(packer.pack(index));
+    int b = hash(index, 0, dimension) & mask;
+    while (true) {
+      int s = table[b];
+      if (s == 0) break;
+      if (equalsAt(s - 1, index)) return s - 1;
+      b = (b + 1) & mask;
+    }
+    int slot = size;
+    if ((slot + 1) * dimension > slab.length) {
+      slab = Arrays.copyOf(slab, Math.max(slab.length * 2, (slot + 1) * dimension));
+    }
+    System.arraycopy(index, 0, slab, slot * dimension, dimension);
+    table[b] = slot + 1;
+    size += 1;
+    if (size > table.length * LOAD_FACTOR) rehash(table.length * 2);
+    return -(slot + 1);
+  }
+
+  /**
+   * Add a packed key to the set if not exists,only supported in packed mode.
+   *
+   * @param key
+   * @return the existed slot id,or -(slot+1) if it is newly added
+   */
+  public int putIfAbsent(long key) {
+    if (sorted) rehash(tableSizeFor((int) (Math.max(size, 2) / LOAD_FACTOR)));
+    int b = hash(key) & mask;
+    while (true) {
+      int s = table[b];
+      if (s == 0) break;
+      if (keys[s - 1] == key) return s - 1;
+      b = (b + 1) & mask;
+    }
+    int slot = size;
+    if (slot + 1 > keys.length) keys = Arrays.copyOf(keys, Math.max(keys.length * 2, slot + 1));
+    keys[slot] = key;
+    table[b] = slot + 1;
+    size += 1;
+    if (size > table.length * LOAD_FACTOR) rehash(table.length * 2);
+    return -(slot + 1);
+  }
+
+  /**
+   * Make room for maxSize locations,so putIfAbsentConcurrently never need to rehash.
+   */
+  public void reserve(int maxSize) {
+    int capacity = Math.max(maxSize, 2);
+    if (table == null || table.length * LOAD_FACTOR < capacity) rehash(tableSizeFor((int) (capacity / LOAD_FACTOR)));
+    if (null == packer) {
+      if (slab.length < capacity * dimension) slab = Arrays.copyOf(slab, capacity * dimension);
+    } else {
+      if (keys.length < capacity) keys = Arrays.copyOf(keys, capacity);
+    }
+  }
+
+  /**
+   * Lock-free version of putIfAbsent,safe to be called by multiple threads.
+   * A writer claims the empty bucket by CAS, allocates a slot,writes the coordinates and then publishes the slot.
+   * Other threads probing a claimed bucket wait for the publishing.
+   * The total size should never exceed the reserved capacity.
+   *
+   * @param index
+   * @return the existed slot id,or -(slot+1) if it is newly added
+   */
+  public int putIfAbsentConcurrently(short[] index) {
+    long key = 0;
+    int b;
+    if (null == packer) {
+      b = hash(index, 0, dimension) & mask;
+    } else {
+      key = packer.pack(index);
+      b = hash(key) & mask;
+    }
+    int[] table = this.table;
+    int mask = this.mask;
+    while (true) {
+      int s = (int) TABLE.getAcquire(table, b);
+      if (s == 0) {
+        if (TABLE.compareAndSet(table, b, 0, BUSY)) {
+          int slot = (int) SIZE.getAndAdd(this, 1);
+          if (null == packer) System.arraycopy(index, 0, slab, slot * dimension, dimension);
+          else keys[slot] = key;
+          TABLE.setRelease(table, b, slot + 1);
+          return -(slot + 1);
+        }
+        // lost the race,check the bucket again.
+      } else if (s == BUSY) {
+        Thread.onSpinWait();
+      } else {
+        boolean equals = (null == packer) ? equalsAt(s - 1, index) : keys[s - 1] == key;
+        if (equals) return s - 1;
+        b = (b + 1) & mask;
+      }
+    }
+  }
+
+  public int putIfAbsent(Location loc) {
+    return putIfAbsent(loc.index);
+  }
+
+  /**
+   * Packed key at given slot,only supported in packed mode.
+   */
+  public long key(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Copy coordinates of the given slot into buffer
+   */
+  public void copyIndex(int slot, short[] buffer) {
+    if (null != packer) packer.unpack(keys[slot], buffer);
+    else System.arraycopy(slab, slot * dimension, buffer, 0, dimension);
+  }
+
+  /**
+   * Coordinate of the i-th dimension at slot
+   */
+  public short get(int slot, int i) {
+    if (null != packer) return packer.unpack(keys[slot], i);
+    else return slab[slot * dimension + i];
+  }
+
+  /**
+   * Materialize a location at given slot
+   */
+  public Location location(int slot) {
+    short[] index = new short[dimension];
+    copyIndex(slot, index);
+    return new Location(index);
+  }
+
+  /**
+   * Remove all slots satisfying the filter, and compact the remaining slots.
+   * Slot ids are reassigned in its original order.
+   *
+   * @param filter predicate on slot id
+   * @return removed count
+   */
+  public int removeIf(IntPredicate filter) {
+    int d = (null == packer) ? dimension : 1;
+    int kept = 0;
+    for (int s = 0; s < size; s++) {
+      if (!filter.test(s)) {
+        if (kept != s) {
+          if (null == packer) System.arraycopy(slab, s * d, slab, kept * d, d);
+          else keys[kept] = keys[s];
+        }
+        kept += 1;
+      }
+    }
+    int removed = size - kept;
+    if (removed > 0) {
+      size = kept;
+      if (!sorted) rehash(tableSizeFor((int) (Math.max(size, 2) / LOAD_FACTOR)));
+      if (null == packer) {
+        if (slab.length > 4 * Math.max(size, 4) * d) slab = Arrays.copyOf(slab, Math.max(size, 2) * d);
+      } else {
+        if (keys.length > 4 * Math.max(size, 4)) keys = Arrays.copyOf(keys, Math.max(size, 2));
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Rearrange the slots,the new slot i holds the location of old slot order[i].
+   *
+   * @param order a permutation of [0,size)
+   */
+  public void reorder(int[] order) {
+    if (null == packer) {
+      int d = dimension;
+      short[] slab = new short[this.slab.length];
+      for (int s = 0; s < size; s++) System.arraycopy(this.slab, order[s] * d, slab, s * d, d);
+      this.slab = slab;
+    } else {
+      long[] keys = new long[this.keys.length];
+      for (int s = 0; s < size; s++) keys[s] = this.keys[order[s]];
+      this.keys = keys;
+    }
+    rehash(table.length);
+  }
+
+  /**
+   * Release unused capacity.
+   * In packed mode, the keys are sorted and the hash table is dropped,so slot ids are changed.
+   */
+  public void trim() {
+    if (null == packer) {
+      if (slab.length > size * dimension) slab = Arrays.copyOf(slab, Math.max(size, 1) * dimension);
+    } else {
+      if (keys.length > size) keys = Arrays.copyOf(keys, Math.max(size, 1));
+      Arrays.sort(keys, 0, size);
+      table = null;
+      sorted = true;
+    }
+  }
+
+  private boolean equalsAt(int slot, short[] index) {
+    short[] slab = this.slab;
+    int offset = slot * dimension;
+    for (int i = 0; i < dimension; i++) {
+      if (slab[offset + i] != index[i]) return false;
+    }
+    return true;
+  }
+
+  private void newTable(int capacity) {
+    this.table = new int[capacity];
+    this.mask = capacity - 1;
+  }
+
+  private void rehash(int capacity) {
+    newTable(capacity);
+    int[] table = this.table;
+    int mask = this.mask;
+    for (int s = 0; s < size; s++) {
+      int b = (null == packer ? hash(slab, s * dimension, dimension) : hash(keys[s])) & mask;
+      while (table[b] != 0) b = (b + 1) & mask;
+      table[b] = s + 1;
+    }
+    sorted = false;
+  }
+
+  /**
+   * Iterate all locations in slot order,each location is a new object.
+   */
+  @Override
+  public Iterator<Location> iterator() {
+    return new Iterator<Location>() {
+      int slot = 0;
+
+      @Override
+      public boolean hasNext() {
+        return slot < size;
+      }
+
+      @Override
+      public Location next() {
+        if (slot >= size) throw new NoSuchElementException();
+        return location(slot++);
+      }
+    };
+  }
+}
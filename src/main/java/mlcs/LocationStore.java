@@ -20,6 +20,7 @@ package mlcs;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.IntPredicate;
 
 /**
  * LocationStore is a layered storage structure.
@@ -29,7 +30,7 @@ import java.util.*;
 class LocationStore {
   final Mlcs mlcs;
   final String[] fileNames;
-  final HashMap<Location, Location>[] levels;
+  final LocationSet[] levels;
   final Serializer serializer;
   long size = 0;//in memory node count
   long capacity;//in memory capacity
@@ -39,14 +40,14 @@ class LocationStore {
 
   public LocationStore(Mlcs mlcs, long capacity) {
     int maxLevel = mlcs.maxLength;
-    this.serializer = new Serializer(mlcs);
+    this.serializer = mlcs.serializer;
     this.mlcs = mlcs;
     this.fileNames = new String[maxLevel];
     for (int i = 0; i < maxLevel; i++) {
       this.fileNames[i] = "out/data_" + maxLevel + "_" + mlcs.seqs.size() + "_" + (i + 1);
     }
     int ml = mlcs.maxLength;
-    this.levels = new HashMap[ml];
+    this.levels = new LocationSet[ml];
     this.capacity = capacity;
   }
 
@@ -70,6 +71,13 @@ class LocationStore {
     short l = maxLevel;
     HashMap<Location, Node> nexts = new HashMap<>();
     HashMap<Location, Node> currents = new HashMap<>();
+    // slot index of nexts and currents
+    int dimension = mlcs.seqs.size();
+    LocationSet nextSet = new LocationSet(dimension);
+    ArrayList<Node> nextNodes = new ArrayList<>();
+    LocationSet currentSet = new LocationSet(dimension);
+    ArrayList<Node> currentNodes = new ArrayList<>();
+    LocationCursor successors = mlcs.successors();
 
     while (l > 0) {
       Iterator<Location> iter = iterator(l);
@@ -77,16 +85,21 @@ class LocationStore {
       while (iter.hasNext()) {
         Location id = iter.next();
         boolean hasSuccessors = false;
-        List<Location> nextLocs = mlcs.nextLocations(id);
-        for (Location loc : nextLocs) {
-          Node next = nexts.get(loc);
-          if (next != null) {
+        boolean hasNoneNexts = true;
+        successors.reset(id.index);
+        while (successors.next()) {
+          hasNoneNexts = false;
+          int slot = nextSet.indexOf(successors.index);
+          if (slot >= 0) {
             hasSuccessors = true;
-            next.link(id);
+            nextNodes.get(slot).link(id);
           }
         }
-        if (hasSuccessors || (nextLocs.isEmpty() && isLastLayer)) {
-          currents.put(id, new Node(id, l));
+        if (hasSuccessors || (hasNoneNexts && isLastLayer)) {
+          Node node = new Node(id, l);
+          currents.put(id, node);
+          currentSet.putIfAbsent(id.index);
+          currentNodes.add(node);
         }
       }
       graph.addLevel(l, currents);
@@ -100,6 +113,10 @@ class LocationStore {
       }
       nexts = currents;
       currents = new HashMap<>();
+      nextSet = currentSet;
+      nextNodes = currentNodes;
+      currentSet = new LocationSet(dimension);
+      currentNodes = new ArrayList<>();
       l -= 1;
     }
     //add start to level 1 nodes
@@ -130,9 +147,10 @@ class LocationStore {
    * @param level the level of the layer
    * @param nodes not empty nodes collections
    */
-  public void add(short level, HashMap<Location, Location> nodes) {
+  public void add(short level, LocationSet nodes) {
     totalSize += nodes.size();
     if (memoryMode) {
+      nodes.trim();
       levels[level - 1] = nodes;
       size += nodes.size();
       if (size > maxSize) maxSize = size;
@@ -163,11 +181,13 @@ class LocationStore {
    * @param level
    * @param levelNodes
    */
-  private void serialize(short level, HashMap<Location, Location> levelNodes) {
+  private void serialize(short level, LocationSet levelNodes) {
     try {
       FileOutputStream os = new FileOutputStream(this.fileNames[level - 1]);
-      for (Location loc : levelNodes.keySet()) {
-        os.write(serializer.toBytes(loc));
+      short[] index = new short[mlcs.seqs.size()];
+      for (int slot = 0, n = levelNodes.size(); slot < n; slot++) {
+        levelNodes.copyIndex(slot, index);
+        os.write(serializer.toBytes(index));
       }
       os.flush();
       os.close();
@@ -183,7 +203,7 @@ class LocationStore {
    * @return
    */
   public Iterator<Location> iterator(short level) {
-    HashMap<Location, Location> levelNodes = levels[level - 1];
+    LocationSet levelNodes = levels[level - 1];
     if (null == levelNodes) {
       try {
         FileInputStream is = new FileInputStream(fileNames[level - 1]);
@@ -193,7 +213,7 @@ class LocationStore {
         return null;
       }
     } else {
-      return levelNodes.values().iterator();
+      return levelNodes.iterator();
     }
   }
 
@@ -201,17 +221,17 @@ class LocationStore {
    * Batch delete the nodes at a given level
    *
    * @param level
-   * @param removed
+   * @param removed filter on slot id
+   * @return removed count
    */
-  public void remove(short level, List<Location> removed) {
-    HashMap<Location, Location> levelNodes = levels[level - 1];
+  public int remove(short level, IntPredicate removed) {
+    LocationSet levelNodes = levels[level - 1];
     if (null == levelNodes) {
       throw new RuntimeException("Operation is only supported in memory model.");
     } else {
-      size -= removed.size();
-      for (Location r : removed) {
-        levelNodes.remove(r);
-      }
+      int count = levelNodes.removeIf(removed);
+      size -= count;
+      return count;
     }
   }
 
@@ -221,8 +241,8 @@ class LocationStore {
    * @param level
    * @return
    */
-  public HashMap<Location, Location> get(short level) {
-    HashMap<Location, Location> levelNodes = levels[level - 1];
+  public LocationSet get(short level) {
+    LocationSet levelNodes = levels[level - 1];
     if (null == levelNodes) {
       throw new RuntimeException("Operation is only supported in memory model.");
     } else {
@@ -245,24 +265,33 @@ class LocationStore {
     short level = startLevel;
     int totalRemoved = 0;
     while (level > 0) {
-      List<Location> removed = new ArrayList<>();
-      HashMap<Location, Location> nextLevelNodes = get((short) (level + 1));
-      Iterator<Location> iterator = iterator(level);
-      while (iterator.hasNext()) {
-        Location id = iterator.next();
-        List<Location> successors = mlcs.nextLocations(id);
-        boolean hasNoneSuccessors = true;
-        for (Location loc : successors) {
-          if (nextLevelNodes.containsKey(loc)) {
-            hasNoneSuccessors = false;
-            break;
+      LocationSet levelNodes = get(level);
+      LocationSet nextLevelNodes = get((short) (level + 1));
+      int removed;
+      if (levelNodes.isPacked()) {
+        short[] index = new short[mlcs.seqs.size()];
+        long[] nexts = new long[mlcs.charset.size()];
+        removed = remove(level, slot -> {
+          int cnt = mlcs.nextKeys(levelNodes.key(slot), index, nexts);
+          for (int i = 0; i < cnt; i++) {
+            if (nextLevelNodes.contains(nexts[i])) return false;
           }
-        }
-        if (hasNoneSuccessors) removed.add(id);
+          return true;
+        });
+      } else {
+        short[] index = new short[mlcs.seqs.size()];
+        LocationCursor successors = mlcs.successors();
+        removed = remove(level, slot -> {
+          levelNodes.copyIndex(slot, index);
+          successors.reset(index);
+          while (successors.next()) {
+            if (nextLevelNodes.contains(successors.index)) return false;
+          }
+          return true;
+        });
       }
-      remove(level, removed);
-      totalRemoved += removed.size();
-      if (removed.isEmpty()) break;
+      totalRemoved += removed;
+      if (removed == 0) break;
     }
     return totalRemoved;
   }
@@ -24,6 +24,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,12 +40,22 @@ public class Mlcs {
   public final Location start; //startNode
   public final Location end; // endNode
 
-  short[][][] successorTable; // char->seq->table
-  short[][][] predecessorTable; // char->seq->table
-  short[][][] distanceTable;// char->seq->table
+  // Position-major tables, all characters of one (seq,pos) are adjacent: table[seq][pos * charCount + char]
+  final int charCount;
+  short[][] successorTable; // seq->pos->char
+  short[][] predecessorTable; // seq->pos->char
+  short[][] distanceTable;// seq->pos->char
   // maximum current subscript set
   public final int maxLength;
+  // packs a location into long key when possible
+  public final Serializer serializer;
   int maxThread = 0;
+  // upbound of mlcs length,tightened to the minimum pairwise lcs by boundLength()
+  public int upperBound;
+  // optional bounds tightening tailUpbound,e.g. suffix lcs of sequence pairs
+  TailBound[] tailBounds = new TailBound[0];
+  // dominance filter backend of every level,see DominanceSelector
+  String dominanceFilter = DominanceSelector.Auto;
 
   /**
    * building successor tables
@@ -54,20 +65,23 @@ public class Mlcs {
     this.seqs = seqs;
     start = Mlcs.buildStart(seqs.size());
     end = Mlcs.buildEnd(seqs);
-    successorTable = new short[charset.size()][][];
-    predecessorTable = new short[charset.size()][][];
-    distanceTable = new short[charset.size()][][];
+    charCount = charset.size();
+    successorTable = new short[seqs.size()][];
+    predecessorTable = new short[seqs.size()][];
+    distanceTable = new short[seqs.size()][];
     List<Character> charList = new ArrayList<Character>(charset);
 
-    for (int i = 0; i < charList.size(); i++) {
-      successorTable[i] = new short[seqs.size()][];
-      predecessorTable[i] = new short[seqs.size()][];
-      distanceTable[i] = new short[seqs.size()][];
-      for (int j = 0; j < seqs.size(); j++) {
-        Sequence seq = seqs.get(j);
-        successorTable[i][j] = seq.buildSuccessors(charList.get(i).charValue());
-        predecessorTable[i][j] = seq.buildPredecessors(charList.get(i).charValue());
-        distanceTable[i][j] = seq.buildDistance(charList.get(i).charValue());
+    for (int j = 0; j < seqs.size(); j++) {
+      Sequence seq = seqs.get(j);
+      int positions = seq.chars.length;
+      successorTable[j] = new short[positions * charCount];
+      predecessorTable[j] = new short[positions * charCount];
+      distanceTable[j] = new short[positions * charCount];
+      for (int i = 0; i < charCount; i++) {
+        char c = charList.get(i).charValue();
+        interleave(seq.buildSuccessors(c), successorTable[j], i);
+        interleave(seq.buildPredecessors(c), predecessorTable[j], i);
+        interleave(seq.buildDistance(c), distanceTable[j], i);
       }
     }
 
@@ -77,6 +91,17 @@ public class Mlcs {
       if (s.length() - 1 < minOfSeq) minOfSeq = s.length() - 1;
     }
     maxLength = minOfSeq;
+    upperBound = maxLength;
+    serializer = new Serializer(maxLength, seqs.size());
+  }
+
+  /**
+   * Put a character's table into the position-major table
+   */
+  private void interleave(short[] charTable, short[] table, int c) {
+    for (int pos = 0; pos < charTable.length; pos++) {
+      table[pos * charCount + c] = charTable[pos];
+    }
   }
 
   /**
@@ -86,18 +111,70 @@ public class Mlcs {
    * @return
    */
   public int tailUpbound(short[] index) {
+    int charCount = this.charCount;
+    short[][] distanceTable = this.distanceTable;
     int bound = 0;
-    for (int i = 0; i < distanceTable.length; i++) {
+    for (int i = 0; i < charCount; i++) {
       short minOfChar = Short.MAX_VALUE;
-      for (int j = 0; j < seqs.size(); j++) {
-        short d = distanceTable[i][j][index[j]];
+      for (int j = 0; j < index.length; j++) {
+        short d = distanceTable[j][index[j] * charCount + i];
         if (d < minOfChar) minOfChar = d;
       }
       bound += minOfChar;
     }
+    for (TailBound tailBound : tailBounds) {
+      int b = tailBound.upbound(index);
+      if (b < bound) bound = b;
+    }
     return bound;
   }
 
+  /**
+   * Calculate the upbound of mlcs length by bit parallel pairwise lcs
+   */
+  public int boundLength() {
+    ForkJoinPool pool = newPool();
+    upperBound = BitLcs.upbound(this, pool);
+    pool.shutdown();
+    return upperBound;
+  }
+
+  /**
+   * Tighten tailUpbound with the suffix lcs of sequence pairs
+   *
+   * @param pairing see PairBound.Chain and PairBound.All
+   */
+  public void usePairBound(String pairing) throws IOException {
+    ForkJoinPool pool = newPool();
+    addTailBound(PairBound.build(this, pairing, pool, Runtime.getRuntime().maxMemory() / 4));
+    pool.shutdown();
+  }
+
+  /**
+   * Tighten tailUpbound with the exact mlcs of sequence triples(a relaxation of the whole problem)
+   *
+   * @param band 0 for full tables,otherwise only offsets within band from the diagonal are stored.
+   */
+  public void useSubsetBound(int band) throws IOException {
+    ForkJoinPool pool = newPool();
+    addTailBound(SubsetBound.build(this, band, pool, Runtime.getRuntime().maxMemory() / 4));
+    pool.shutdown();
+  }
+
+  /**
+   * Pin the dominance filter backend,or auto
+   */
+  public void useDominanceFilter(String backend) {
+    DominanceSelector.check(this, backend);
+    this.dominanceFilter = backend;
+  }
+
+  public void addTailBound(TailBound tailBound) {
+    TailBound[] bounds = Arrays.copyOf(tailBounds, tailBounds.length + 1);
+    bounds[tailBounds.length] = tailBound;
+    tailBounds = bounds;
+  }
+
   public char charAt(Location location) {
     return seqs.get(0).charAt(location.index[0]);
   }
@@ -106,22 +183,110 @@ public class Mlcs {
     return (maxThread > 0) ? new ForkJoinPool(maxThread) : new ForkJoinPool();
   }
 
+  /**
+   * Create a level set,using packed long keys if the location fits in a long.
+   */
+  public LocationSet newLocationSet(int expectedSize) {
+    return new LocationSet(serializer, expectedSize);
+  }
+
+  /**
+   * Create a reusable cursor over successors
+   */
+  public LocationCursor successors() {
+    return new LocationCursor(this, successorTable, true);
+  }
+
+  /**
+   * Create a reusable cursor over predecessors
+   */
+  public LocationCursor predecessors() {
+    return new LocationCursor(this, predecessorTable, false);
+  }
+
   /**
    * All successors after the current node
    */
   public List<Location> nextLocations(Location current) {
     List<Location> nexts = new ArrayList<Location>(charset.size());
-    for (int i = 0; i < successorTable.length; i++) {
-      int snum = seqs.size();
-      short[] tmp = new short[snum];
-      for (int j = 0; j < seqs.size(); j++) {
-        short successor = successorTable[i][j][current.index[j]];
+    LocationCursor cursor = successors().reset(current.index);
+    while (cursor.next()) nexts.add(cursor.toLocation());
+    return nexts;
+  }
+
+  /**
+   * The successor of current location on the given character.
+   *
+   * @param current current location index
+   * @param c       character index
+   * @param next    buffer for the successor
+   * @return true if the successor exists
+   */
+  public boolean nextLocation(short[] current, int c, short[] next) {
+    short[][] successors = successorTable;
+    for (int j = 0; j < current.length; j++) {
+      short successor = successors[j][current[j] * charCount + c];
+      if (successor < 0 || successor > maxLength) return false;
+      next[j] = successor;
+    }
+    return true;
+  }
+
+  /**
+   * Whether the current location has any successor,a location without successors is a predecessor of end.
+   */
+  public boolean hasSuccessor(short[] current) {
+    short[][] successors = successorTable;
+    for (int c = 0; c < charCount; c++) {
+      int j = 0;
+      while (j < current.length) {
+        short successor = successors[j][current[j] * charCount + c];
         if (successor < 0 || successor > maxLength) break;
-        else tmp[j] = successor;
+        j++;
       }
-      if (tmp[tmp.length - 1] > 0) nexts.add(new Location(tmp));
+      if (j == current.length) return true;
     }
-    return nexts;
+    return false;
+  }
+
+  /**
+   * The reachable successor of current location on the given character.
+   *
+   * @return true if the successor exists and it is possible to reach mlcsLength
+   */
+  public boolean nextReachableLocation(short[] current, int c, int mlcsLength, short level, short[] next) {
+    return nextLocation(current, c, next) && tailUpbound(next) + level >= mlcsLength;
+  }
+
+  public int charCount() {
+    return charCount;
+  }
+
+  /**
+   * All successors after the packed location,only used in packed mode.
+   *
+   * @param key   packed location
+   * @param index buffer for unpacked location
+   * @param nexts buffer for packed successors,its length should not less than charset size
+   * @return successor count
+   */
+  public int nextKeys(long key, short[] index, long[] nexts) {
+    serializer.unpack(key, index);
+    int snum = seqs.size();
+    int cnt = 0;
+    short[][] successors = successorTable;
+    for (int i = 0; i < charCount; i++) {
+      long next = 0;
+      int j = 0;
+      while (j < snum) {
+        short successor = successors[j][index[j] * charCount + i];
+        if (successor < 0 || successor > maxLength) break;
+        next = serializer.append(next, successor);
+        j += 1;
+      }
+      if (j == snum) nexts[cnt++] = next;
+    }
+    return cnt;
   }
 
   /**
@@ -130,55 +295,41 @@ public class Mlcs {
    */
   public List<Location> nextReachableLocations(Location current, int mlcsLength, short level) {
     List<Location> nexts = new ArrayList<Location>(charset.size());
-    for (int i = 0; i < successorTable.length; i++) {
-      int snum = seqs.size();
-      short[] tmp = new short[snum];
-      for (int j = 0; j < seqs.size(); j++) {
-        short successor = successorTable[i][j][current.index[j]];
-        if (successor < 0 || successor > maxLength) break;
-        else tmp[j] = successor;
-      }
-      if (tmp[tmp.length - 1] > 0) {
-        int possible = this.tailUpbound(tmp);
-        if (possible + level >= mlcsLength) {
-          nexts.add(new Location(tmp));
-        }
-      }
-    }
+    LocationCursor cursor = successors().reset(current.index, mlcsLength, level);
+    while (cursor.next()) nexts.add(cursor.toLocation());
     return nexts;
   }
 
   public List<Location> nextDirectLocations(Location current) {
-    List<Location> nexts = nextLocations(current);
     List<Location> result = new ArrayList<>();
-    for (Location l : nexts) {
-      List<Location> ps = preLocations(l);
+    LocationCursor nexts = successors().reset(current.index);
+    LocationCursor pres = predecessors();
+    while (nexts.next()) {
+      pres.reset(nexts.index);
       boolean isDirect = true;
-      for (Location p : ps) {
-        if (current.morePriorOver(p)) {
+      // the start is the only predecessor when pres is empty, and it never be more prior over current.
+      while (pres.next()) {
+        if (morePriorOver(current.index, pres.index)) {
           isDirect = false;
           break;
         }
       }
-      if (isDirect) result.add(l);
+      if (isDirect) result.add(nexts.toLocation());
     }
     return result;
   }
 
+  private static boolean morePriorOver(short[] a, short[] b) {
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] >= b[i]) return false;
+    }
+    return true;
+  }
+
   public List<Location> preLocations(Location current) {
     List<Location> pres = new ArrayList<Location>(charset.size());
-    for (int i = 0; i < predecessorTable.length; i++) {
-      int snum = seqs.size();
-      short[] tmp = new short[snum];
-      for (int j = 0; j < seqs.size(); j++) {
-        short successor = predecessorTable[i][j][current.index[j]];
-        if (successor <= 0) break;
-        else tmp[j] = successor;
-      }
-      if (tmp[tmp.length - 1] > 0) {
-        pres.add(new Location(tmp));
-      }
-    }
+    LocationCursor cursor = predecessors().reset(current.index);
+    while (cursor.next()) pres.add(cursor.toLocation());
     return (pres.isEmpty()) ? List.of(start) : pres;
   }
 
@@ -0,0 +1,237 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tail upbound by the suffix LCS of sequence pairs.
+ * <p>
+ * For a pair (a,b),table(p,q) is the LCS length of the two suffixes after position p and q.
+ * The MLCS after a location is not longer than the LCS of any pair,so the minimum of all pairs is a upbound.
+ * Tables are stored as short,on heap or mapped to a temporary file when they are too big.
+ */
+public class PairBound implements TailBound {
+
+  /**
+   * Pairing strategies
+   * chain: (0,1),(1,2)...(d-1,0)
+   * all: every pair
+   */
+  public static final String Chain = "chain";
+  public static final String All = "all";
+
+  final int[][] pairs; // pair->(seq a,seq b)
+  final PairTable[] tables;
+
+  PairBound(int[][] pairs, PairTable[] tables) {
+    this.pairs = pairs;
+    this.tables = tables;
+  }
+
+  /**
+   * Build tables of chosen pairs concurrently.
+   *
+   * @param heapBytes tables larger than it in total are mapped to files.
+   */
+  public static PairBound build(Mlcs mlcs, String pairing, ForkJoinPool pool, long heapBytes) throws IOException {
+    int[][] pairs = pairs(mlcs.seqs.size(), pairing);
+    long total = 0;
+    for (int[] pair : pairs) {
+      total += 2L * mlcs.seqs.get(pair[0]).chars.length * mlcs.seqs.get(pair[1]).chars.length;
+    }
+    boolean mapped = total > heapBytes;
+    for (int[] pair : pairs) {
+      if (!HeapPairTable.fits(mlcs.seqs.get(pair[0]).chars.length, mlcs.seqs.get(pair[1]).chars.length)) mapped = true;
+    }
+    PairTable[] tables = new PairTable[pairs.length];
+    for (int i = 0; i < pairs.length; i++) {
+      int rows = mlcs.seqs.get(pairs[i][0]).chars.length;
+      int cols = mlcs.seqs.get(pairs[i][1]).chars.length;
+      tables[i] = mapped ? new MappedPairTable(rows, cols) : new HeapPairTable(rows, cols);
+    }
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (int i = 0; i < pairs.length; i++) {
+      tasks.add(pool.submit(new Builder(mlcs.seqs.get(pairs[i][0]), mlcs.seqs.get(pairs[i][1]), tables[i])));
+    }
+    for (ForkJoinTask<Integer> task : tasks) {
+      task.join();
+    }
+    System.out.println("build " + pairs.length + " suffix lcs tables(" + (total / 1024 / 1024) + "MB"
+      + (mapped ? " mapped" : "") + ")");
+    return new PairBound(pairs, tables);
+  }
+
+  static int[][] pairs(int dimension, String pairing) {
+    List<int[]> pairs = new ArrayList<>();
+    if (dimension < 2) return new int[0][];
+    if (pairing.equals(All)) {
+      for (int i = 0; i < dimension; i++) {
+        for (int j = i + 1; j < dimension; j++) pairs.add(new int[]{i, j});
+      }
+    } else if (pairing.equals(Chain)) {
+      for (int i = 0; i < dimension - 1; i++) pairs.add(new int[]{i, i + 1});
+      if (dimension > 2) pairs.add(new int[]{dimension - 1, 0});
+    } else {
+      throw new IllegalArgumentException("Unsupported pairing " + pairing + ",using chain|all instead.");
+    }
+    return pairs.toArray(new int[pairs.size()][]);
+  }
+
+  /**
+   * Minimum suffix LCS of all pairs
+   */
+  public int upbound(short[] index) {
+    int bound = Integer.MAX_VALUE;
+    for (int i = 0; i < pairs.length; i++) {
+      int lcs = tables[i].get(index[pairs[i][0]], index[pairs[i][1]]);
+      if (lcs < bound) bound = lcs;
+    }
+    return bound;
+  }
+
+  /**
+   * Fill table bottom-up,row p only depends on row p+1.
+   */
+  static class Builder extends RecursiveTask<Integer> {
+    Sequence a, b;
+    PairTable table;
+
+    Builder(Sequence a, Sequence b, PairTable table) {
+      this.a = a;
+      this.b = b;
+      this.table = table;
+    }
+
+    public Integer compute() {
+      char[] x = a.chars;
+      char[] y = b.chars;
+      int la = x.length - 2, lb = y.length - 2; // real chars in [1,la] and [1,lb]
+      short[] below = new short[y.length];
+      short[] row = new short[y.length];
+      for (int p = x.length - 1; p >= 0; p--) {
+        if (p < la) {
+          char c = x[p + 1];
+          row[lb] = 0;
+          row[lb + 1] = 0;
+          for (int q = lb - 1; q >= 0; q--) {
+            if (y[q + 1] == c) {
+              row[q] = (short) (below[q + 1] + 1);
+            } else {
+              row[q] = (below[q] >= row[q + 1]) ? below[q] : row[q + 1];
+            }
+          }
+        } else {
+          Arrays.fill(row, (short) 0);
+        }
+        table.setRow(p, row);
+        short[] t = below;
+        below = row;
+        row = t;
+      }
+      return x.length;
+    }
+  }
+
+  /**
+   * A rows x cols short matrix
+   */
+  interface PairTable {
+    int get(int p, int q);
+
+    void setRow(int p, short[] row);
+  }
+
+  static class HeapPairTable implements PairTable {
+    /**
+     * Max cells of a heap table,the limit of a java array
+     */
+    static final long MaxCells = Integer.MAX_VALUE - 8;
+    final int cols;
+    final short[] data;
+
+    HeapPairTable(int rows, int cols) {
+      if (!fits(rows, cols)) {
+        throw new IllegalArgumentException("Table of " + rows + "x" + cols + " is too big for heap,using mapped table instead.");
+      }
+      this.cols = cols;
+      this.data = new short[rows * cols];
+    }
+
+    static boolean fits(long rows, long cols) {
+      return rows * cols <= MaxCells;
+    }
+
+    public int get(int p, int q) {
+      return data[p * cols + q];
+    }
+
+    public void setRow(int p, short[] row) {
+      System.arraycopy(row, 0, data, p * cols, cols);
+    }
+  }
+
+  /**
+   * Table mapped to a temporary file,split into chunks of whole rows(a mapping is limited to 2GB).
+   */
+  static class MappedPairTable implements PairTable {
+    static final long ChunkBytes = 1L << 30;
+    final int cols;
+    final int rowsPerChunk;
+    final MappedByteBuffer[] chunks;
+
+    MappedPairTable(int rows, int cols) throws IOException {
+      this.cols = cols;
+      this.rowsPerChunk = (int) (ChunkBytes / (2L * cols));
+      File file = File.createTempFile("mlcs_pair", ".bin");
+      file.deleteOnExit();
+      chunks = new MappedByteBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+        for (int i = 0; i < chunks.length; i++) {
+          long start = (long) i * rowsPerChunk * cols * 2;
+          long size = (long) Math.min(rowsPerChunk, rows - i * rowsPerChunk) * cols * 2;
+          chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        }
+      }
+    }
+
+    public int get(int p, int q) {
+      return chunks[p / rowsPerChunk].getShort(((p % rowsPerChunk) * cols + q) << 1);
+    }
+
+    public void setRow(int p, short[] row) {
+      MappedByteBuffer chunk = chunks[p / rowsPerChunk];
+      int offset = (p % rowsPerChunk) * cols << 1;
+      for (int q = 0; q < cols; q++) {
+        chunk.putShort(offset + (q << 1), row[q]);
+      }
+    }
+  }
+}
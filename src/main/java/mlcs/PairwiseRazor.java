@@ -0,0 +1,57 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Brute force dominance filter for tiny levels.
+ * All locations are loaded into a SfsRazor.Window and every one is compared with the whole window.
+ */
+public class PairwiseRazor implements DominanceFilter {
+  Mlcs mlcs;
+  short level;
+
+  public PairwiseRazor(Mlcs mlcs, int level) {
+    this.level = (short) level;
+    this.mlcs = mlcs;
+  }
+
+  public int[] shave(ForkJoinPool pool, ArrayList<Location> locs) {
+    SfsRazor.Window window = new SfsRazor.Window(mlcs.seqs.size());
+    int disabled = 0;
+    for (int i = 0, n = locs.size(); i < n; i++) {
+      Location loc = locs.get(i);
+      if (loc.isDiscard()) disabled++;
+      else window.add(loc.index, i);
+    }
+    int marked = 0;
+    for (int k = 0; k < window.size; k++) {
+      Location loc = locs.get(window.positions[k]);
+      if (window.dominates(loc.index, window.acc)) {
+        loc.setReserved(false);
+        marked++;
+      } else {
+        loc.setReserved(true);
+      }
+    }
+    return new int[]{disabled, marked};
+  }
+}
@@ -1,9 +1,11 @@
 package mlcs;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
 
 public class QuickAP {
 
@@ -13,7 +15,7 @@ public class QuickAP {
     int i = 0;
     short mlcsLength = 0;
     int retryCount = 0;
-    while (retryCount < maxRetry) {
+    while (retryCount < maxRetry && mlcsLength < mlcs.upperBound) {
       short newLength = estimateLength(mlcs, estimateCount + i * increment, mlcsLength);
       i += 1;
       if (newLength > mlcsLength) {
@@ -26,50 +28,128 @@ public class QuickAP {
     return mlcsLength;
   }
 
+  /**
+   * Run several estimate counts at once on one pool,until the time budget is used up.
+   * A round runs widths counts(estimateCount + i * increment) concurrently,
+   * every run publishes its length to a shared lower bound,which the other runs prune with at their next level.
+   * It stops early when the lower bound meets mlcs.upperBound.
+   *
+   * @param widths count of concurrent runs in a round
+   * @param budget time budget in milliseconds,the first round always completes,
+   *               runs of later rounds are cancelled at the deadline and publish the level reached so far.
+   */
+  public static short estimateLength(Mlcs mlcs, final int estimateCount, final int increment, int widths, long budget) {
+    long deadline = System.currentTimeMillis() + budget;
+    ForkJoinPool pool = mlcs.newPool();
+    Limit lowerBound = new Limit(mlcs.maxLength, 0);
+    int i = 0;
+    do {
+      BooleanSupplier cancelled = (i == 0) ? () -> false : () -> System.currentTimeMillis() >= deadline;
+      LinkedList<ForkJoinTask<Short>> runs = new LinkedList<>();
+      for (int w = 0; w < widths; w++) {
+        int count = estimateCount + i * increment;
+        i += 1;
+        runs.add(pool.submit(() -> {
+          short length = estimateLength(mlcs, pool, count, lowerBound, cancelled);
+          lowerBound.raise(length);
+          return length;
+        }));
+      }
+      for (ForkJoinTask<Short> run : runs) {
+        run.join();
+      }
+    } while (System.currentTimeMillis() < deadline && lowerBound.mlcsLength() < mlcs.upperBound);
+    pool.shutdown();
+    return (short) lowerBound.mlcsLength();
+  }
+
   /**
    * Try to find a approximate length of the given MLCS
    */
   public static short estimateLength(Mlcs mlcs, int estimateCount, int mlcsLength) {
-    List<Location> routes = List.of(mlcs.start);
-    Location.ScoreSorter sorter = new Location.ScoreSorter(mlcs);
     ForkJoinPool pool = mlcs.newPool();
+    short level = estimateLength(mlcs, pool, estimateCount, new Limit(mlcs.maxLength, mlcsLength), () -> false);
+    pool.shutdown();
+    return level;
+  }
+
+  /**
+   * Beam search on the given pool,successors are pruned by the latest lowerBound.
+   *
+   * @param cancelled checked every level,the level reached so far is returned when cancelled.
+   */
+  static short estimateLength(Mlcs mlcs, ForkJoinPool pool, int estimateCount, Limit lowerBound, BooleanSupplier cancelled) {
+    List<Location> routes = List.of(mlcs.start);
     short level = 0;
     int maxLength = mlcs.maxLength;
-    while (!routes.isEmpty()) {
+    DominanceSelector selector = new DominanceSelector(mlcs);
+    while (!routes.isEmpty() && !cancelled.getAsBoolean()) {
       level += 1;
-      HashSet<Location> nexts = new HashSet<>();
-      if (mlcsLength <= 0) {
-        for (Location a : routes) nexts.addAll(mlcs.nextLocations(a));
-      } else {
-        for (Location a : routes) nexts.addAll(mlcs.nextReachableLocations(a, mlcsLength, level));
-      }
-      if (nexts.isEmpty()) {
+      ArrayList<Location> fronts = AbstractCrawler.expand(pool, mlcs, lowerBound, level, routes, mlcs.newLocationSet(0));
+      if (fronts.isEmpty()) {
         level -= 1;
         break;
       }
 
-      //building a IndexTree to mark dominated nodes.
-      ArrayList<Location> fronts = new ArrayList<>(nexts);
-//      Razor razor = new Razor(mlcs, level, true);
-      Razor3 razor = new Razor3(mlcs, level);
-      razor.shave(pool, fronts);
+      // marking dominated nodes.
+      selector.shave(pool, level, fronts);
+      // selecting and filtering
+      TopK.select(pool, mlcs, fronts, estimateCount);
       ArrayList<Location> locs = new ArrayList<>();
       for (int i = 0, n = fronts.size(); i < n; i++) {
         Location loc = fronts.get(i);
         if (!loc.isDiscard()) locs.add(loc);
       }
-      // sorting and filtering
-      if (locs.size() <= estimateCount) {
-        routes = locs;
-      } else {
-        locs.sort(sorter);
-        routes = locs.subList(0, estimateCount);
-      }
+      routes = locs;
       //System.out.print("\restimate mlcs length..." + (level * 100.0 / maxLength) + "%");
     }
     System.out.println("\restimate mlcs length " + level + " 100% (reserve " + estimateCount + " points)");
-    pool.shutdown();
     return level;
   }
 
+  /**
+   * Improve the lower bound in background,while a crawler is searching with the same limit.
+   * Runs beams of growing counts(estimateCount,estimateCount+increment...) until stopped,
+   * the limit meets mlcs.upperBound,or maxRetry beams in a row find nothing longer.
+   * <p>
+   * It runs in its own thread and submits the beam tasks to the shared pool,
+   * so they interleave with the tasks of the crawler instead of occupying a worker.
+   */
+  public static class Improver implements Runnable {
+    final Mlcs mlcs;
+    final ForkJoinPool pool;
+    final Limit limit;
+    final int estimateCount;
+    final int increment;
+    final int maxRetry;
+    volatile boolean stopped = false;
+
+    public Improver(Mlcs mlcs, ForkJoinPool pool, Limit limit, int estimateCount, int increment, int maxRetry) {
+      this.mlcs = mlcs;
+      this.pool = pool;
+      this.limit = limit;
+      this.estimateCount = estimateCount;
+      this.increment = increment;
+      this.maxRetry = maxRetry;
+    }
+
+    public void run() {
+      int count = estimateCount;
+      int retryCount = 0;
+      while (!stopped && retryCount < maxRetry && limit.mlcsLength() < mlcs.upperBound) {
+        short length = estimateLength(mlcs, pool, count, limit, () -> stopped);
+        if (!stopped && limit.raise(length)) {
+          System.out.println("\rimprove mlcs length to " + length);
+          retryCount = 0;
+        } else {
+          retryCount += 1;
+        }
+        count += increment;
+      }
+    }
+
+    public void stop() {
+      stopped = true;
+    }
+  }
 }
@@ -13,7 +13,7 @@ import java.util.concurrent.RecursiveTask;
  * Dominated nodes razor.
  * Using non-dominant filtering, mark dominated locations.
  */
-public class Razor {
+public class Razor implements DominanceFilter {
   short level;
   Mlcs mlcs;
   boolean weakDominated = false;
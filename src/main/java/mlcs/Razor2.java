@@ -13,7 +13,7 @@ import java.util.concurrent.RecursiveTask;
  * Dominated nodes razor.
  * Using non-dominant filtering, mark dominated locations.
  */
-public class Razor2 {
+public class Razor2 implements DominanceFilter {
 
   Mlcs mlcs;
   int level;
@@ -14,7 +14,7 @@ import java.util.concurrent.RecursiveTask;
  * Dominated nodes razor.
  * Using non-dominant filtering, mark dominated locations.
  */
-public class Razor3 {
+public class Razor3 implements DominanceFilter {
 
   Mlcs mlcs;
   short level;
@@ -39,13 +39,13 @@ public class Razor3 {
       if (id.isDiscard()) disabled++;
     }
     Set<Location> keyLocs = IndexTree.findKeyLocs(locs);
-    IndexTree keyTree = new IndexTree(mlcs.seqs.size());
+    IndexTree keyTree = newTree();
     for (Location id : keyLocs) {
       id.setReserved(true);
       keyTree.put(id);
     }
-    // 1.2. build the minimal index tree
-    keyTree.build();
+    // 1.2. build the minimal index tree concurrently
+    keyTree.build(pool);
 
     // 1.3. filter all locations using the minimal tree
     int marked = 0;
@@ -62,7 +62,7 @@ public class Razor3 {
     }
 
     //2.1 create a index tree which contains all locations.
-    IndexTree otherTree = new IndexTree(mlcs.seqs.size());
+    IndexTree otherTree = newTree();
     for (Location id : locs) {
       if (!id.isDiscard() && !keyLocs.contains(id)) {
         id.status = 0;
@@ -70,7 +70,7 @@ public class Razor3 {
       }
     }
     //2.2 build the tree
-    otherTree.build();
+    otherTree.build(pool);
     //2.3 filter
     segs = Queues.split(locs.size(), pool.getParallelism());
     tasks2.clear();
@@ -87,6 +87,13 @@ public class Razor3 {
     return new int[]{disabled, marked};
   }
 
+  /**
+   * Create a empty index tree
+   */
+  IndexTree newTree() {
+    return new IndexTree(mlcs.seqs.size());
+  }
+
   /**
    * A task which checks dominance relationship of nodes in range [from,to).
    */
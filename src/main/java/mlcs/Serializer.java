@@ -27,8 +27,12 @@ import java.util.Arrays;
 public class Serializer {
   private final int bits;
   public final int bytes;
-  private final int dimension;
+  final int dimension;
   private final int mask;
+  /**
+   * whether a whole location fits in one long
+   */
+  public final boolean packable;
 
   public Serializer(Mlcs mlcs) {
     this(mlcs.maxLength, mlcs.seqs.size());
@@ -41,6 +45,47 @@ public class Serializer {
     char[] v = new char[bits];
     Arrays.fill(v, '1');
     this.mask = Integer.parseInt(new String(v), 2);
+    this.packable = dimension * bits <= 64;
+  }
+
+  /**
+   * Pack a location index into a long key.
+   * The first dimension lays in the highest bits,so the order of keys is the lexicographic order of locations.
+   * @param index
+   * @return
+   */
+  public long pack(short[] index) {
+    long key = 0;
+    for (int i = 0; i < dimension; i++) {
+      key = (key << bits) | index[i];
+    }
+    return key;
+  }
+
+  /**
+   * Append one coordinate to a partial packed key.
+   */
+  public long append(long key, short a) {
+    return (key << bits) | a;
+  }
+
+  /**
+   * Unpack a long key to the given index buffer.
+   * @param key
+   * @param index
+   */
+  public void unpack(long key, short[] index) {
+    for (int i = dimension - 1; i >= 0; i--) {
+      index[i] = (short) (key & mask);
+      key >>>= bits;
+    }
+  }
+
+  /**
+   * Unpack the i-th coordinate of a long key.
+   */
+  public short unpack(long key, int i) {
+    return (short) ((key >>> ((dimension - 1 - i) * bits)) & mask);
   }
 
   /**
@@ -92,9 +137,18 @@ public class Serializer {
    * @return
    */
   public byte[] toBytes(Location loc) {
+    return toBytes(loc.index);
+  }
+
+  /**
+   * Convert a location index to byte array
+   * @param index
+   * @return
+   */
+  public byte[] toBytes(short[] index) {
     byte[] bin = new byte[bytes];
     int bitIdx = 0;
-    for (short idx : loc.index) {
+    for (short idx : index) {
       int offset = bitIdx % 8;
       int startBytes = bitIdx / 8;
       byte[] data = toBytes(idx, offset);
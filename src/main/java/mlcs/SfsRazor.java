@@ -0,0 +1,239 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Queues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sort-filter-skyline dominance filter.
+ * <p>
+ * A location can only be dominated by one with a smaller sum of coordinates,
+ * so after sorting by sum every location is compared with the undominated ones found before it(the window).
+ * The sorted level is split into partitions which are filtered concurrently with their own windows,
+ * then survivors of a partition are checked against windows of the previous partitions.
+ * Windows are columnar and compared block by block with branch free loops.
+ * It marks the same locations as Razor3,and it is fast when few locations survive.
+ */
+public class SfsRazor implements DominanceFilter {
+
+  /**
+   * Count of window locations compared at once
+   */
+  static final int BlockSize = 64;
+
+  Mlcs mlcs;
+  short level;
+
+  public SfsRazor(Mlcs mlcs, int level) {
+    this.level = (short) level;
+    this.mlcs = mlcs;
+  }
+
+  /**
+   * Using multiple thread,filter partitions and merge their windows.
+   *
+   * @param pool thread pool
+   * @param locs a list of locations
+   * @return [original removed counts,new dominated counts]
+   */
+  public int[] shave(ForkJoinPool pool, ArrayList<Location> locs) {
+    long startTime = System.currentTimeMillis();
+    int n = locs.size();
+    // sum of coordinates<<32|position
+    long[] order = new long[n];
+    int disabled = 0;
+    int cnt = 0;
+    for (int i = 0; i < n; i++) {
+      Location loc = locs.get(i);
+      if (loc.isDiscard()) {
+        disabled++;
+      } else {
+        long sum = 0;
+        for (short c : loc.index) sum += c;
+        order[cnt++] = (sum << 32) | i;
+      }
+    }
+    final int sortCnt = cnt;
+    pool.submit(() -> Arrays.parallelSort(order, 0, sortCnt)).join();
+    short[][] points = new short[cnt][];
+    for (int i = 0; i < cnt; i++) {
+      points[i] = locs.get((int) order[i]).index;
+    }
+    boolean[] dominated = new boolean[cnt];
+
+    // 1. filter partitions with their own windows
+    int dimension = mlcs.seqs.size();
+    List<int[]> segs = Queues.split(cnt, pool.getParallelism());
+    Window[] windows = new Window[segs.size()];
+    LinkedList<RecursiveTask<Integer>> tasks = new LinkedList<>();
+    for (int s = 0; s < windows.length; s++) {
+      windows[s] = new Window(dimension);
+      tasks.add(new Filter(windows[s], points, dominated, segs.get(s)[0], segs.get(s)[1]));
+      pool.submit(tasks.getLast());
+    }
+    for (RecursiveTask<Integer> task : tasks) task.join();
+    tasks.clear();
+
+    // 2. check survivors of every partition against windows before it
+    for (int s = 1; s < windows.length; s++) {
+      tasks.add(new Merger(windows, s, dominated));
+      pool.submit(tasks.getLast());
+    }
+    for (RecursiveTask<Integer> task : tasks) task.join();
+
+    int marked = 0;
+    for (int i = 0; i < cnt; i++) {
+      Location loc = locs.get((int) order[i]);
+      if (dominated[i]) {
+        loc.setReserved(false);
+        marked++;
+      } else {
+        loc.setReserved(true);
+      }
+    }
+    System.out.println(this.level + " sort(" + (n - disabled) + "-" + marked + ") using " + (System.currentTimeMillis() - startTime));
+    return new int[]{disabled, marked};
+  }
+
+  /**
+   * Undominated locations of a partition,columnar seq->location
+   */
+  static class Window {
+    final int dimension;
+    short[][] columns;
+    int[] positions; // position in the sorted level
+    int size;
+    final int[] acc = new int[BlockSize];
+
+    Window(int dimension) {
+      this.dimension = dimension;
+      this.columns = new short[dimension][BlockSize];
+      this.positions = new int[BlockSize];
+    }
+
+    void add(short[] p, int position) {
+      if (size == positions.length) {
+        int capacity = size * 2;
+        for (int j = 0; j < dimension; j++) columns[j] = Arrays.copyOf(columns[j], capacity);
+        positions = Arrays.copyOf(positions, capacity);
+      }
+      for (int j = 0; j < dimension; j++) columns[j][size] = p[j];
+      positions[size++] = position;
+    }
+
+    /**
+     * Whether some location in the window is less than p in every coordinate
+     *
+     * @param acc a buffer of BlockSize
+     */
+    boolean dominates(short[] p, int[] acc) {
+      for (int from = 0; from < size; from += BlockSize) {
+        int len = Math.min(BlockSize, size - from);
+        Arrays.fill(acc, 0, len, -1);
+        int any = -1;
+        for (int j = 0; j < dimension && any != 0; j++) {
+          short[] column = columns[j];
+          int pj = p[j];
+          any = 0;
+          for (int k = 0; k < len; k++) {
+            // -1 if column[from+k] < pj
+            int x = acc[k] & ((column[from + k] - pj) >> 31);
+            acc[k] = x;
+            any |= x;
+          }
+        }
+        if (any != 0) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Sort-filter-skyline over [from,to) of the sorted level.
+   */
+  static class Filter extends RecursiveTask<Integer> {
+    Window window;
+    short[][] points;
+    boolean[] dominated;
+    int from, to;
+
+    Filter(Window window, short[][] points, boolean[] dominated, int from, int to) {
+      this.window = window;
+      this.points = points;
+      this.dominated = dominated;
+      this.from = from;
+      this.to = to;
+    }
+
+    public Integer compute() {
+      int count = 0;
+      int[] acc = window.acc;
+      for (int i = from; i < to; i++) {
+        if (window.dominates(points[i], acc)) {
+          dominated[i] = true;
+          count++;
+        } else {
+          window.add(points[i], i);
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Check the window of a partition against windows of the previous partitions.
+   */
+  static class Merger extends RecursiveTask<Integer> {
+    Window[] windows;
+    int index;
+    boolean[] dominated;
+
+    Merger(Window[] windows, int index, boolean[] dominated) {
+      this.windows = windows;
+      this.index = index;
+      this.dominated = dominated;
+    }
+
+    public Integer compute() {
+      Window window = windows[index];
+      int dimension = window.dimension;
+      int[] acc = new int[BlockSize];
+      short[] p = new short[dimension];
+      int count = 0;
+      for (int k = 0; k < window.size; k++) {
+        for (int j = 0; j < dimension; j++) p[j] = window.columns[j][k];
+        for (int s = 0; s < index; s++) {
+          if (windows[s].dominates(p, acc)) {
+            dominated[window.positions[k]] = true;
+            count++;
+            break;
+          }
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tail upbound by relaxing the problem to subsets of three sequences.
+ * <p>
+ * MLCS(all sequences) is not longer than MLCS(any subset),and a location projects to a location of the subset.
+ * So the exact tail length of the projection,table(p,q,r) of the suffixes after p,q and r,is a upbound.
+ * The sequences are covered by triples (0,1,2),(3,4,5)...,the last one wraps around.
+ * <p>
+ * For long sequences a band keeps only q,r within [p-band,p+band].
+ * Cells outside the band are bounded by the shortest remaining suffix,
+ * so the values inside the band are still upbounds(the recurrence is monotone).
+ * When full tables do not fit the heap,the widest band fitting it is chosen.
+ */
+public class SubsetBound implements TailBound {
+
+  /**
+   * Max bytes of all tables,mapped ones included
+   */
+  static final long MaxBytes = 16L << 30;
+
+  final Triple[] triples;
+
+  SubsetBound(Triple[] triples) {
+    this.triples = triples;
+  }
+
+  /**
+   * Build tables of all triples concurrently.
+   *
+   * @param band      0 for full tables(or a band fitting heapBytes if they are too big)
+   * @param heapBytes tables larger than it in total are mapped to files.
+   */
+  public static SubsetBound build(Mlcs mlcs, int band, ForkJoinPool pool, long heapBytes) throws IOException {
+    int d = mlcs.seqs.size();
+    if (d < 3) throw new IllegalArgumentException("Subset bound needs at least 3 sequences,using pair bound instead.");
+    int count = (d + 2) / 3;
+    Triple[] triples = triples(mlcs, count, band);
+    long total = bytes(triples);
+    if (band == 0 && total > heapBytes) {
+      long rows = 0;
+      for (Triple triple : triples) rows += triple.rows;
+      band = (int) ((Math.sqrt((double) heapBytes / (2 * rows)) - 1) / 2);
+      if (band < 1) {
+        throw new IllegalArgumentException("Sequences are too long for subset tables,using pair bound instead.");
+      }
+      System.out.println("full subset tables need " + (total / 1024 / 1024) + "MB,using band " + band + " instead");
+      triples = triples(mlcs, count, band);
+      total = bytes(triples);
+    }
+    if (total > MaxBytes) {
+      throw new IllegalArgumentException("Subset tables need " + (total / 1024 / 1024) + "MB,using a smaller band instead.");
+    }
+    boolean mapped = total > heapBytes;
+    for (Triple triple : triples) {
+      if (2L * triple.cols() > PairBound.MappedPairTable.ChunkBytes) {
+        throw new IllegalArgumentException("Sequences are too long for full subset tables,using a band instead.");
+      }
+      if (!PairBound.HeapPairTable.fits(triple.rows, triple.cols())) mapped = true;
+    }
+    for (Triple triple : triples) {
+      triple.table = mapped ? new PairBound.MappedPairTable(triple.rows, (int) triple.cols())
+        : new PairBound.HeapPairTable(triple.rows, (int) triple.cols());
+    }
+    LinkedList<ForkJoinTask<Integer>> tasks = new LinkedList<>();
+    for (Triple triple : triples) {
+      tasks.add(pool.submit(new Builder(triple)));
+    }
+    for (ForkJoinTask<Integer> task : tasks) {
+      task.join();
+    }
+    System.out.println("build " + count + " subset tables(" + (total / 1024 / 1024) + "MB"
+      + (mapped ? " mapped" : "") + ")");
+    return new SubsetBound(triples);
+  }
+
+  /**
+   * Cover the sequences by triples of the given band
+   */
+  static Triple[] triples(Mlcs mlcs, int count, int band) {
+    int d = mlcs.seqs.size();
+    Triple[] triples = new Triple[count];
+    for (int i = 0; i < count; i++) {
+      triples[i] = new Triple(mlcs, new int[]{(3 * i) % d, (3 * i + 1) % d, (3 * i + 2) % d}, band);
+    }
+    return triples;
+  }
+
+  /**
+   * Total bytes of the tables
+   */
+  static long bytes(Triple[] triples) {
+    long total = 0;
+    for (Triple triple : triples) total += 2L * triple.rows * triple.cols();
+    return total;
+  }
+
+  public int upbound(short[] index) {
+    int bound = Integer.MAX_VALUE;
+    for (Triple triple : triples) {
+      int b = triple.get(index[triple.seqs[0]], index[triple.seqs[1]], index[triple.seqs[2]]);
+      if (b < bound) bound = b;
+    }
+    return bound;
+  }
+
+  /**
+   * Projected tail table of three sequences,row p is a plane of (q,r).
+   */
+  static class Triple {
+    final int[] seqs;
+    final char[] x, y, z;
+    final int lx, ly, lz; // real chars in [1,lx],[1,ly] and [1,lz]
+    final int band;
+    final int rows, nq, nr;
+    PairBound.PairTable table;
+
+    Triple(Mlcs mlcs, int[] seqs, int band) {
+      this.seqs = seqs;
+      this.x = mlcs.seqs.get(seqs[0]).chars;
+      this.y = mlcs.seqs.get(seqs[1]).chars;
+      this.z = mlcs.seqs.get(seqs[2]).chars;
+      this.lx = x.length - 2;
+      this.ly = y.length - 2;
+      this.lz = z.length - 2;
+      this.band = band;
+      this.rows = x.length;
+      this.nq = (band > 0) ? 2 * band + 1 : y.length;
+      this.nr = (band > 0) ? 2 * band + 1 : z.length;
+    }
+
+    long cols() {
+      return (long) nq * nr;
+    }
+
+    /**
+     * the first q(r) stored in plane p
+     */
+    int low(int p) {
+      return (band > 0) ? p - band : 0;
+    }
+
+    /**
+     * shortest remaining suffix,the bound of cells outside the table
+     */
+    int outside(int p, int q, int r) {
+      int b = Math.min(lx - p, Math.min(ly - q, lz - r));
+      return (b < 0) ? 0 : b;
+    }
+
+    int get(int p, int q, int r) {
+      int i = q - low(p), j = r - low(p);
+      if (i < 0 || i >= nq || j < 0 || j >= nr) return outside(p, q, r);
+      return table.get(p, i * nr + j);
+    }
+  }
+
+  /**
+   * Fill a triple plane by plane from the end,plane p only depends on plane p+1.
+   */
+  static class Builder extends RecursiveTask<Integer> {
+    Triple t;
+
+    Builder(Triple triple) {
+      this.t = triple;
+    }
+
+    public Integer compute() {
+      Triple t = this.t;
+      int nq = t.nq, nr = t.nr;
+      int shift = (t.band > 0) ? 1 : 0; // the same (q,r) is shifted in plane p+1 when banded
+      short[] below = new short[nq * nr];
+      short[] plane = new short[nq * nr];
+      for (int p = t.rows - 1; p >= 0; p--) {
+        int low = t.low(p);
+        for (int i = nq - 1; i >= 0; i--) {
+          int q = low + i;
+          for (int j = nr - 1; j >= 0; j--) {
+            int r = low + j;
+            int v;
+            if (p >= t.lx || q < 0 || q >= t.ly || r < 0 || r >= t.lz) {
+              v = 0;
+            } else if (t.x[p + 1] == t.y[q + 1] && t.x[p + 1] == t.z[r + 1]) {
+              int bi = i + 1 - shift, bj = j + 1 - shift;
+              v = 1 + ((bi < nq && bj < nr) ? below[bi * nr + bj] : t.outside(p + 1, q + 1, r + 1));
+            } else {
+              int bi = i - shift, bj = j - shift;
+              v = (bi >= 0 && bj >= 0) ? below[bi * nr + bj] : t.outside(p + 1, q, r);
+              int next = (i + 1 < nq) ? plane[(i + 1) * nr + j] : t.outside(p, q + 1, r);
+              if (next > v) v = next;
+              next = (j + 1 < nr) ? plane[i * nr + j + 1] : t.outside(p, q, r + 1);
+              if (next > v) v = next;
+            }
+            plane[i * nr + j] = (short) v;
+          }
+        }
+        t.table.setRow(p, plane);
+        short[] tmp = below;
+        below = plane;
+        plane = tmp;
+      }
+      return t.rows;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Dominance filter for 2 or 3 sequences in O(n log n).
+ * <p>
+ * Locations are sorted by the first coordinate,then swept group by group(equal first coordinates never dominate).
+ * For 2 sequences the minimal second coordinate seen so far decides,
+ * for 3 sequences a Fenwick tree over the second coordinate keeps the prefix minimal third coordinate.
+ * It marks the same locations as Razor3:a location is discarded iff another one is less in every coordinate.
+ */
+public class SweepRazor implements DominanceFilter {
+  Mlcs mlcs;
+  short level;
+
+  public SweepRazor(Mlcs mlcs, int level) {
+    this.level = (short) level;
+    this.mlcs = mlcs;
+  }
+
+  public static boolean supports(Mlcs mlcs) {
+    int d = mlcs.seqs.size();
+    return d == 2 || d == 3;
+  }
+
+  /**
+   * Sort concurrently and sweep the locations.
+   *
+   * @param pool thread pool
+   * @param locs a list of locations
+   * @return [original removed counts,new dominated counts]
+   */
+  public int[] shave(ForkJoinPool pool, ArrayList<Location> locs) {
+    long startTime = System.currentTimeMillis();
+    int n = locs.size();
+    // first coordinate<<32|position
+    long[] order = new long[n];
+    int disabled = 0;
+    int cnt = 0;
+    for (int i = 0; i < n; i++) {
+      Location loc = locs.get(i);
+      if (loc.isDiscard()) disabled++;
+      else order[cnt++] = ((long) loc.index[0] << 32) | i;
+    }
+    final int sortCnt = cnt;
+    pool.submit(() -> Arrays.parallelSort(order, 0, sortCnt)).join();
+
+    int marked = (mlcs.seqs.size() == 2) ? sweep2(locs, order, cnt) : sweep3(locs, order, cnt);
+    System.out.println(this.level + " sort(" + (n - disabled) + "-" + marked + ") using " + (System.currentTimeMillis() - startTime));
+    return new int[]{disabled, marked};
+  }
+
+  private int sweep2(ArrayList<Location> locs, long[] order, int cnt) {
+    int marked = 0;
+    short minY = Short.MAX_VALUE;
+    int g = 0;
+    while (g < cnt) {
+      int e = groupEnd(order, g, cnt);
+      short groupMin = minY;
+      for (int k = g; k < e; k++) {
+        Location loc = locs.get((int) order[k]);
+        short y = loc.index[1];
+        if (minY < y) {
+          loc.setReserved(false);
+          marked++;
+        } else {
+          loc.setReserved(true);
+          if (y < groupMin) groupMin = y;
+        }
+      }
+      minY = groupMin;
+      g = e;
+    }
+    return marked;
+  }
+
+  private int sweep3(ArrayList<Location> locs, long[] order, int cnt) {
+    int marked = 0;
+    // prefix minimal z over y,1-based
+    short[] tree = new short[mlcs.maxLength + 3];
+    Arrays.fill(tree, Short.MAX_VALUE);
+    int g = 0;
+    while (g < cnt) {
+      int e = groupEnd(order, g, cnt);
+      for (int k = g; k < e; k++) {
+        Location loc = locs.get((int) order[k]);
+        if (minBefore(tree, loc.index[1]) < loc.index[2]) {
+          loc.setReserved(false);
+          marked++;
+        } else {
+          loc.setReserved(true);
+        }
+      }
+      for (int k = g; k < e; k++) {
+        Location loc = locs.get((int) order[k]);
+        if (loc.isDiscard()) continue; // dominated ones add nothing
+        short z = loc.index[2];
+        for (int i = loc.index[1] + 1; i < tree.length; i += i & -i) {
+          if (z < tree[i]) tree[i] = z;
+          else break;
+        }
+      }
+      g = e;
+    }
+    return marked;
+  }
+
+  /**
+   * minimal z of locations whose y is less than the given one
+   */
+  private static short minBefore(short[] tree, short y) {
+    short min = Short.MAX_VALUE;
+    for (int i = y; i > 0; i -= i & -i) {
+      if (tree[i] < min) min = tree[i];
+    }
+    return min;
+  }
+
+  private static int groupEnd(long[] order, int from, int cnt) {
+    long x = order[from] >>> 32;
+    int e = from + 1;
+    while (e < cnt && (order[e] >>> 32) == x) e++;
+    return e;
+  }
+}
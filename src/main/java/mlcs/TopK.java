@@ -0,0 +1,162 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Queues;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Select the best k locations of a level in linear time.
+ * <p>
+ * Every task ranks a segment(see Location.rank) and quick-selects its k best ranks,
+ * the k-th rank of the merged candidates is the threshold of the level.
+ * Equal ranks are reserved in list order,so the result is the same as a stable sort by ScoreSorter.
+ */
+public class TopK {
+
+  /**
+   * Keep the best k undiscarded locations,discard the others.
+   *
+   * @return count of reserved locations
+   */
+  public static int select(ForkJoinPool pool, Mlcs mlcs, List<Location> locations, int k) {
+    int n = locations.size();
+    if (k <= 0) {
+      for (Location loc : locations) loc.setReserved(false);
+      return 0;
+    }
+    long[] ranks = new long[n];
+    List<int[]> segs = Queues.split(n, pool.getParallelism());
+    LinkedList<Ranker> tasks = new LinkedList<>();
+    for (int[] seg : segs) {
+      tasks.add(new Ranker(mlcs, locations, ranks, k, seg[0], seg[1]));
+      pool.submit(tasks.getLast());
+    }
+    long[] candidates = new long[0];
+    int candidateCnt = 0;
+    int rankedCnt = 0;
+    for (Ranker task : tasks) {
+      long[] best = task.join();
+      rankedCnt += task.ranked;
+      if (candidateCnt + best.length > candidates.length) {
+        candidates = Arrays.copyOf(candidates, Math.max(candidateCnt + best.length, candidates.length * 2));
+      }
+      System.arraycopy(best, 0, candidates, candidateCnt, best.length);
+      candidateCnt += best.length;
+    }
+    if (rankedCnt <= k) return rankedCnt;
+
+    select(candidates, 0, candidateCnt, k - 1);
+    long threshold = candidates[k - 1];
+    int ties = k;
+    for (int i = 0; i < candidateCnt; i++) {
+      if (candidates[i] < threshold) ties--;
+    }
+    for (int i = 0; i < n; i++) {
+      long rank = ranks[i];
+      if (rank == Long.MAX_VALUE) continue;
+      if (rank > threshold) {
+        locations.get(i).setReserved(false);
+      } else if (rank == threshold) {
+        if (ties > 0) ties--;
+        else locations.get(i).setReserved(false);
+      }
+    }
+    return k;
+  }
+
+  /**
+   * Rearrange a[from,to) so that a[from+nth] is the nth smallest,smaller ones are before it.
+   */
+  static void select(long[] a, int from, int to, int nth) {
+    int lo = from, hi = to - 1, target = from + nth;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < a[lo]) swap(a, mid, lo);
+      if (a[hi] < a[lo]) swap(a, hi, lo);
+      if (a[hi] < a[mid]) swap(a, hi, mid);
+      long pivot = a[mid];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (a[i] < pivot) i++;
+        while (a[j] > pivot) j--;
+        if (i <= j) {
+          swap(a, i, j);
+          i++;
+          j--;
+        }
+      }
+      if (target <= j) hi = j;
+      else if (target >= i) lo = i;
+      else return;
+    }
+  }
+
+  private static void swap(long[] a, int i, int j) {
+    long t = a[i];
+    a[i] = a[j];
+    a[j] = t;
+  }
+
+  /**
+   * Rank a segment and return its best k ranks
+   */
+  static class Ranker extends RecursiveTask<long[]> {
+    Mlcs mlcs;
+    List<Location> locations;
+    long[] ranks;
+    int k;
+    int from, to;
+    int ranked; // count of undiscarded locations in the segment
+
+    Ranker(Mlcs mlcs, List<Location> locations, long[] ranks, int k, int from, int to) {
+      this.mlcs = mlcs;
+      this.locations = locations;
+      this.ranks = ranks;
+      this.k = k;
+      this.from = from;
+      this.to = to;
+    }
+
+    public long[] compute() {
+      long[] best = new long[to - from];
+      int cnt = 0;
+      for (int i = from; i < to; i++) {
+        Location loc = locations.get(i);
+        if (loc.isDiscard()) {
+          ranks[i] = Long.MAX_VALUE;
+        } else {
+          ranks[i] = loc.rank(mlcs);
+          best[cnt++] = ranks[i];
+        }
+      }
+      ranked = cnt;
+      if (cnt > k) {
+        select(best, 0, cnt, k - 1);
+        cnt = k;
+      }
+      return (cnt == best.length) ? best : Arrays.copyOf(best, cnt);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Queues;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Order a level along the Morton(Z-order) curve.
+ * <p>
+ * The key of a location interleaves the bits of its coordinates,from the highest bit of every dimension down.
+ * When dimension x bits exceeds 64,only the highest 64 bits are kept,near locations still share a prefix.
+ * Keys are sorted by a parallel LSD radix sort,8 bits a pass,passes on a digit shared by all keys are skipped.
+ */
+public class ZOrder {
+
+  static final int RadixBits = 8;
+  static final int Radix = 1 << RadixBits;
+
+  /**
+   * Morton order of the locations
+   *
+   * @return the i-th location in Z-order is locations[order[i]]
+   */
+  public static int[] sort(ForkJoinPool pool, Mlcs mlcs, List<Location> locations) {
+    int n = locations.size();
+    int d = mlcs.seqs.size();
+    int bits = 32 - Integer.numberOfLeadingZeros(mlcs.maxLength);
+    int keyBits = Math.min(64, d * bits);
+    long[] keys = new long[n];
+    int[] order = new int[n];
+    List<int[]> segs = Queues.split(n, pool.getParallelism());
+    LinkedList<Coder> coders = new LinkedList<>();
+    for (int[] seg : segs) {
+      coders.add(new Coder(locations, bits, keyBits, keys, order, seg[0], seg[1]));
+      pool.submit(coders.getLast());
+    }
+    for (Coder coder : coders) coder.join();
+
+    long[] keyBuf = new long[n];
+    int[] orderBuf = new int[n];
+    int[][] counts = new int[segs.size()][];
+    for (int shift = 0; shift < keyBits; shift += RadixBits) {
+      LinkedList<Counter> counters = new LinkedList<>();
+      for (int[] seg : segs) {
+        counters.add(new Counter(keys, shift, seg[0], seg[1]));
+        pool.submit(counters.getLast());
+      }
+      int s = 0;
+      for (Counter counter : counters) counts[s++] = counter.join();
+      if (!offsets(counts, n)) continue;
+
+      LinkedList<Scatter> scatters = new LinkedList<>();
+      s = 0;
+      for (int[] seg : segs) {
+        scatters.add(new Scatter(keys, order, keyBuf, orderBuf, counts[s++], shift, seg[0], seg[1]));
+        pool.submit(scatters.getLast());
+      }
+      for (Scatter scatter : scatters) scatter.join();
+      long[] k = keys;
+      keys = keyBuf;
+      keyBuf = k;
+      int[] o = order;
+      order = orderBuf;
+      orderBuf = o;
+    }
+    return order;
+  }
+
+  /**
+   * Turn digit counts of segments into start positions,digit-major and segment-minor,so the scatter is stable.
+   *
+   * @return false if all keys share one digit and the pass is useless.
+   */
+  static boolean offsets(int[][] counts, int n) {
+    int offset = 0;
+    for (int digit = 0; digit < Radix; digit++) {
+      int total = 0;
+      for (int[] count : counts) total += count[digit];
+      if (total == n) return false;
+      for (int[] count : counts) {
+        int c = count[digit];
+        count[digit] = offset;
+        offset += c;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Interleave coordinates of a segment into keys
+   */
+  static class Coder extends RecursiveTask<Integer> {
+    List<Location> locations;
+    int bits, keyBits;
+    long[] keys;
+    int[] order;
+    int from, to;
+
+    Coder(List<Location> locations, int bits, int keyBits, long[] keys, int[] order, int from, int to) {
+      this.locations = locations;
+      this.bits = bits;
+      this.keyBits = keyBits;
+      this.keys = keys;
+      this.order = order;
+      this.from = from;
+      this.to = to;
+    }
+
+    public Integer compute() {
+      for (int i = from; i < to; i++) {
+        short[] index = locations.get(i).index;
+        long key = 0;
+        int used = 0;
+        for (int b = bits - 1; b >= 0 && used < keyBits; b--) {
+          for (int j = 0; j < index.length && used < keyBits; j++, used++) {
+            key = (key << 1) | ((index[j] >>> b) & 1);
+          }
+        }
+        keys[i] = key;
+        order[i] = i;
+      }
+      return to - from;
+    }
+  }
+
+  /**
+   * Count digits of a segment
+   */
+  static class Counter extends RecursiveTask<int[]> {
+    long[] keys;
+    int shift;
+    int from, to;
+
+    Counter(long[] keys, int shift, int from, int to) {
+      this.keys = keys;
+      this.shift = shift;
+      this.from = from;
+      this.to = to;
+    }
+
+    public int[] compute() {
+      int[] count = new int[Radix];
+      for (int i = from; i < to; i++) {
+        count[(int) (keys[i] >>> shift) & (Radix - 1)]++;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Move keys of a segment to their positions of this pass
+   */
+  static class Scatter extends RecursiveTask<Integer> {
+    long[] keys, keyBuf;
+    int[] order, orderBuf;
+    int[] offsets;
+    int shift;
+    int from, to;
+
+    Scatter(long[] keys, int[] order, long[] keyBuf, int[] orderBuf, int[] offsets, int shift, int from, int to) {
+      this.keys = keys;
+      this.order = order;
+      this.keyBuf = keyBuf;
+      this.orderBuf = orderBuf;
+      this.offsets = offsets;
+      this.shift = shift;
+      this.from = from;
+      this.to = to;
+    }
+
+    public Integer compute() {
+      for (int i = from; i < to; i++) {
+        long key = keys[i];
+        int p = offsets[(int) (key >>> shift) & (Radix - 1)]++;
+        keyBuf[p] = key;
+        orderBuf[p] = order[i];
+      }
+      return to - from;
+    }
+  }
+}
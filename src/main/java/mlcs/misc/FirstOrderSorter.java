@@ -109,6 +109,7 @@ public class FirstOrderSorter {
       if (id.isDiscard()) disabled++;
     }
     int n = locs.size() - disabled;
+    if (n == 0) return new int[]{disabled, 0};
     short[][] population = new short[n][];
     int i = 0;
     HashMap<Integer, Integer> indexes = new HashMap<>();
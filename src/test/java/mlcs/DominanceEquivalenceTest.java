@@ -0,0 +1,179 @@
+package mlcs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Check every dominance filter(and auto) against a brute force pairwise check on random levels.
+ * <p>
+ * A undiscarded location is dominated when another undiscarded one is smaller in every coordinate,
+ * the pre-discarded locations neither dominate nor are counted as dominated.
+ */
+public class DominanceEquivalenceTest {
+
+  static final int MaxCoordinate = 200;
+
+  public static void main(String[] args) {
+    Random random = new Random(7);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    // sweep razor,2 and 3 sequences
+    for (int d = 2; d <= 3; d++) {
+      check(random, pool, d, 300, 40);
+      check(random, pool, d, 800, MaxCoordinate);
+    }
+    // bitset razor,6 to 10 sequences,levels of more than one 8192 block
+    for (int d = 6; d <= 10; d++) {
+      check(random, pool, d, 500, 20);
+      check(random, pool, d, 10000, MaxCoordinate);
+    }
+    // best order razor,4 to 6 sequences,equal coordinates in the sorted orders
+    for (int d = 4; d <= 6; d++) {
+      check(random, pool, d, 600, 10);
+      check(random, pool, d, 3000, MaxCoordinate);
+    }
+    // box razor,4 to 9 sequences,a small range makes nodes branch in every level of the tree
+    for (int d = 4; d <= 9; d++) {
+      check(random, pool, d, 2000, 8);
+      check(random, pool, d, 5000, MaxCoordinate);
+    }
+    // sfs razor,2 to 10 sequences,most locations of a plane survive,so every partition has a window larger than a block
+    for (int d = 2; d <= 10; d++) {
+      check(pool, mlcs(random, d), plane(random, d, 1500));
+    }
+    pool.shutdown();
+    System.out.println("all dominance filters match the pairwise check");
+  }
+
+  /**
+   * Run all backends on copies of one random level
+   *
+   * @param range coordinates are in [1,range],a small range means many dominated and equal coordinates
+   */
+  static void check(Random random, ForkJoinPool pool, int d, int n, int range) {
+    check(pool, mlcs(random, d), level(random, d, n, range));
+  }
+
+  /**
+   * Run all backends on copies of the level
+   */
+  static void check(ForkJoinPool pool, Mlcs mlcs, ArrayList<Location> level) {
+    int d = mlcs.seqs.size();
+    boolean[] expected = bruteForce(level);
+    int discarded = 0, dominated = 0;
+    for (int i = 0; i < level.size(); i++) {
+      if (level.get(i).isDiscard()) discarded++;
+      else if (expected[i]) dominated++;
+    }
+    ArrayList<String> backends = new ArrayList<>(DominanceSelector.Backends);
+    backends.add(DominanceSelector.Auto);
+    for (String backend : backends) {
+      if (backend.equals("sweep") && !SweepRazor.supports(mlcs)) continue;
+      mlcs.useDominanceFilter(backend);
+      ArrayList<Location> locs = copy(level);
+      int[] rs = new DominanceSelector(mlcs).shave(pool, (short) 1, locs);
+      String name = backend + "(d=" + d + ",n=" + level.size() + ")";
+      if (rs[0] != discarded || rs[1] != dominated) {
+        throw new IllegalStateException(name + " shaves [" + rs[0] + "," + rs[1] + "],expected ["
+          + discarded + "," + dominated + "]");
+      }
+      for (int i = 0; i < locs.size(); i++) {
+        boolean discard = level.get(i).isDiscard() || expected[i];
+        if (locs.get(i).isDiscard() != discard) {
+          throw new IllegalStateException(name + " marks " + Arrays.toString(locs.get(i).index) + " wrong");
+        }
+      }
+    }
+  }
+
+  /**
+   * Dominated flags by comparing every pair of undiscarded locations
+   */
+  static boolean[] bruteForce(ArrayList<Location> level) {
+    int n = level.size();
+    boolean[] dominated = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      if (level.get(i).isDiscard()) continue;
+      short[] q = level.get(i).index;
+      for (int k = 0; k < n && !dominated[i]; k++) {
+        if (k == i || level.get(k).isDiscard()) continue;
+        short[] p = level.get(k).index;
+        int j = 0;
+        while (j < q.length && p[j] < q[j]) j++;
+        dominated[i] = (j == q.length);
+      }
+    }
+    return dominated;
+  }
+
+  /**
+   * Distinct random locations,about one tenth are discarded.
+   */
+  static ArrayList<Location> level(Random random, int d, int n, int range) {
+    ArrayList<Location> level = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    while (level.size() < n) {
+      short[] index = new short[d];
+      for (int j = 0; j < d; j++) index[j] = (short) (1 + random.nextInt(range));
+      if (!seen.add(Arrays.toString(index))) continue;
+      Location loc = new Location(index);
+      if (random.nextInt(10) == 0) loc.setReserved(false);
+      level.add(loc);
+    }
+    return level;
+  }
+
+  /**
+   * Distinct random locations around the plane of coordinate sum d*MaxCoordinate/2(they hardly dominate each other),
+   * and about one quarter of them are shifted copies of earlier ones(dominated by those).
+   */
+  static ArrayList<Location> plane(Random random, int d, int n) {
+    ArrayList<Location> level = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    while (level.size() < n) {
+      short[] index = new short[d];
+      if (!level.isEmpty() && random.nextInt(4) == 0) {
+        short[] origin = level.get(random.nextInt(level.size())).index;
+        for (int j = 0; j < d; j++) index[j] = (short) Math.min(MaxCoordinate, origin[j] + 1 + random.nextInt(3));
+      } else {
+        int sum = d * MaxCoordinate / 2;
+        for (int j = 0; j < d - 1; j++) {
+          index[j] = (short) (1 + random.nextInt(MaxCoordinate));
+          sum -= index[j];
+        }
+        index[d - 1] = (short) Math.max(1, Math.min(MaxCoordinate, sum + random.nextInt(5)));
+      }
+      if (!seen.add(Arrays.toString(index))) continue;
+      Location loc = new Location(index);
+      if (random.nextInt(10) == 0) loc.setReserved(false);
+      level.add(loc);
+    }
+    return level;
+  }
+
+  static ArrayList<Location> copy(ArrayList<Location> level) {
+    ArrayList<Location> locs = new ArrayList<>(level.size());
+    for (Location loc : level) {
+      Location c = new Location(loc.index.clone());
+      if (loc.isDiscard()) c.setReserved(false);
+      locs.add(c);
+    }
+    return locs;
+  }
+
+  /**
+   * Random sequences longer than any coordinate of the levels
+   */
+  static Mlcs mlcs(Random random, int d) {
+    String[] seqs = new String[d];
+    for (int i = 0; i < d; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < MaxCoordinate + 20; j++) sb.append("ACGT".charAt(random.nextInt(4)));
+      seqs[i] = sb.toString();
+    }
+    return Mlcs.build(seqs);
+  }
+}
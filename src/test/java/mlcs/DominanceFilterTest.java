@@ -0,0 +1,65 @@
+package mlcs;
+
+import mlcs.misc.FirstOrderSorter;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Run every pinned dominance filter on levels whose locations are all(or all but one) discarded,
+ * and FirstOrderSorter,which has no guard of its own,on an all discarded level.
+ */
+public class DominanceFilterTest {
+
+  public static void main(String[] args) {
+    Random random = new Random(1);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    for (int d : new int[]{3, 4, 7}) {
+      String[] seqs = new String[d];
+      for (int i = 0; i < d; i++) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 40; j++) sb.append("ACGT".charAt(random.nextInt(4)));
+        seqs[i] = sb.toString();
+      }
+      Mlcs mlcs = Mlcs.build(seqs);
+      for (String backend : DominanceSelector.Backends) {
+        if (backend.equals("sweep") && !SweepRazor.supports(mlcs)) continue;
+        mlcs.useDominanceFilter(backend);
+        DominanceSelector selector = new DominanceSelector(mlcs);
+        for (int alive = 0; alive <= 1; alive++) {
+          ArrayList<Location> locs = level(random, d, alive);
+          check(backend, selector.shave(pool, (short) 1, locs), locs, alive);
+        }
+      }
+      ArrayList<Location> locs = level(random, d, 0);
+      check("first", FirstOrderSorter.shave((short) 1, pool, locs), locs, 0);
+    }
+    pool.shutdown();
+    System.out.println("all dominance filters passed");
+  }
+
+  /**
+   * A level of 10 random locations,only the first alive ones are not discarded.
+   */
+  static ArrayList<Location> level(Random random, int d, int alive) {
+    ArrayList<Location> locs = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      short[] index = new short[d];
+      for (int j = 0; j < d; j++) index[j] = (short) (1 + random.nextInt(40));
+      Location loc = new Location(index);
+      if (i >= alive) loc.setReserved(false);
+      locs.add(loc);
+    }
+    return locs;
+  }
+
+  static void check(String backend, int[] rs, ArrayList<Location> locs, int alive) {
+    if (rs[0] != locs.size() - alive || rs[1] != 0) {
+      throw new IllegalStateException(backend + " shaves [" + rs[0] + "," + rs[1] + "] of " + alive + " alive");
+    }
+    for (int i = 0; i < locs.size(); i++) {
+      if (locs.get(i).isDiscard() != (i >= alive)) throw new IllegalStateException(backend + " changes status");
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package mlcs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Insert overlapping random keys into a reserved LocationSet from several threads by putIfAbsentConcurrently,
+ * in packed and unpacked mode.
+ * <p>
+ * Every distinct key should be added by exactly one thread into its own slot,the other threads get that slot,
+ * and indexOf should find all of them,also after trim(which sorts the keys in packed mode).
+ */
+public class LocationSetTest {
+
+  static final int MaxLength = 1000;
+  static final int Threads = 4;
+
+  public static void main(String[] args) {
+    Random random = new Random(3);
+    ForkJoinPool pool = new ForkJoinPool(Threads);
+    // 4 x 10 bits fit in one long,8 x 10 bits do not
+    for (int d : new int[]{4, 8}) {
+      Serializer serializer = new Serializer(MaxLength, d);
+      for (int n : new int[]{1000, 50000}) {
+        check(pool, random, serializer, n, 20);
+        check(pool, random, serializer, n, MaxLength);
+      }
+    }
+    pool.shutdown();
+    System.out.println("all concurrent insertions passed");
+  }
+
+  /**
+   * Every thread inserts all keys in its own order
+   *
+   * @param range coordinates are in [1,range],a small range means many duplicated keys
+   */
+  static void check(ForkJoinPool pool, Random random, Serializer serializer, int n, int range) {
+    int d = serializer.dimension;
+    List<short[]> keys = new ArrayList<>(n);
+    Map<String, short[]> distinct = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      short[] index = new short[d];
+      for (int j = 0; j < d; j++) index[j] = (short) (1 + random.nextInt(range));
+      keys.add(index);
+      distinct.put(Arrays.toString(index), index);
+    }
+    LocationSet set = new LocationSet(serializer, 16);
+    set.reserve(n);
+    String name = (set.isPacked() ? "packed" : "unpacked") + "(d=" + d + ",n=" + n + ",range=" + range + ")";
+
+    List<List<short[]>> orders = new ArrayList<>();
+    LinkedList<ForkJoinTask<int[]>> tasks = new LinkedList<>();
+    for (int t = 0; t < Threads; t++) {
+      List<short[]> order = new ArrayList<>(keys);
+      Collections.shuffle(order, new Random(random.nextLong()));
+      orders.add(order);
+      tasks.add(pool.submit(() -> {
+        int[] rs = new int[order.size()];
+        for (int i = 0; i < rs.length; i++) rs[i] = set.putIfAbsentConcurrently(order.get(i));
+        return rs;
+      }));
+    }
+
+    // key->slot,and how many threads added it
+    Map<String, Integer> slots = new HashMap<>();
+    Map<String, Integer> adds = new HashMap<>();
+    int t = 0;
+    for (ForkJoinTask<int[]> task : tasks) {
+      int[] rs = task.join();
+      List<short[]> order = orders.get(t++);
+      for (int i = 0; i < rs.length; i++) {
+        String key = Arrays.toString(order.get(i));
+        int slot = rs[i] < 0 ? -(rs[i] + 1) : rs[i];
+        if (rs[i] < 0) adds.merge(key, 1, Integer::sum);
+        Integer existed = slots.putIfAbsent(key, slot);
+        if (null != existed && existed != slot) {
+          throw new IllegalStateException(name + " puts " + key + " into slot " + existed + " and " + slot);
+        }
+      }
+    }
+    if (set.size() != distinct.size()) {
+      throw new IllegalStateException(name + " has " + set.size() + " slots for " + distinct.size() + " keys");
+    }
+    for (String key : distinct.keySet()) {
+      if (adds.getOrDefault(key, 0) != 1) {
+        throw new IllegalStateException(name + " adds " + key + " " + adds.getOrDefault(key, 0) + " times");
+      }
+    }
+    if (slots.values().stream().distinct().count() != distinct.size()) {
+      throw new IllegalStateException(name + " shares slots between keys");
+    }
+    find(set, distinct, slots, name);
+    set.trim();
+    find(set, distinct, null, name + " trimmed");
+  }
+
+  /**
+   * indexOf finds every key in a slot with the same coordinates
+   *
+   * @param slots expected slot of keys,null if slots are changed(by trim in packed mode)
+   */
+  static void find(LocationSet set, Map<String, short[]> distinct, Map<String, Integer> slots, String name) {
+    if (set.size() != distinct.size()) {
+      throw new IllegalStateException(name + " has " + set.size() + " slots for " + distinct.size() + " keys");
+    }
+    boolean[] found = new boolean[set.size()];
+    short[] buffer = new short[set.dimension];
+    for (Map.Entry<String, short[]> e : distinct.entrySet()) {
+      int slot = set.indexOf(e.getValue());
+      if (slot < 0 || found[slot] || null != slots && slots.get(e.getKey()) != slot) {
+        throw new IllegalStateException(name + " cannot find " + e.getKey() + " in its own slot");
+      }
+      found[slot] = true;
+      set.copyIndex(slot, buffer);
+      if (!Arrays.equals(buffer, e.getValue())) {
+        throw new IllegalStateException(name + " stores " + e.getKey() + " as " + Arrays.toString(buffer));
+      }
+    }
+  }
+}